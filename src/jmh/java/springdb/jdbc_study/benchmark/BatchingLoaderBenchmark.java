@@ -0,0 +1,70 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.BatchingMemberLoader;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ 16 쓰레드가 서로 다른 (임의의) 회원을 findById - 처리량과 한 건당 지연을 같이 본다
+ - windowMicros = 0 : 로더 없이 findById 마다 Connection + 조회
+ - windowMicros > 0 : BatchingMemberLoader 로 모아서 findAllById (최대 64 개)
+ - 모으는 시간만큼 한 건의 지연은 늘지만, 조회 수와 Connection 획득이 줄어 처리량이 늘어야 한다
+ ./gradlew jmh -PjmhIncludes=BatchingLoaderBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BatchingLoaderBenchmark {
+
+    private static final int MEMBERS = 1024;
+
+    @Param({"0", "100", "1000"})
+    public int windowMicros;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+    private BatchingMemberLoader loader;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("batchLoader", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        List<Member> members = new ArrayList<>(MEMBERS);
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new Member("member" + i, 10000));
+        }
+        memberRepository.saveAll(members);
+
+        if (windowMicros > 0) {
+            loader = new BatchingMemberLoader(memberRepository, BatchingMemberLoader.DEFAULT_MAX_BATCH_SIZE, Duration.ofNanos(windowMicros * 1000L));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (loader != null) {
+            System.out.printf("%naverage batch size = %.1f%n", loader.getAverageBatchSize());
+            loader.close();
+        }
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Member findById() {
+        String memberId = "member" + ThreadLocalRandom.current().nextInt(MEMBERS);
+        return loader == null ? memberRepository.findById(memberId) : loader.findById(memberId);
+    }
+}
@@ -0,0 +1,77 @@
+package springdb.jdbc_study.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.connection.SimpleConnectionPool;
+
+import javax.sql.DataSource;
+
+/*
+ 벤치마크용 내장 H2 DataSource 모음
+ - 로컬 H2 서버(ConnectionConst.URL) 없이도 돌릴 수 있도록 in-memory DB 를 사용한다
+ - DB_CLOSE_DELAY=-1 : 마지막 Connection 이 닫혀도 DB 가 사라지지 않도록 유지
+ */
+public abstract class BenchmarkDataSources {
+
+    public static final String USERNAME = "sa";
+    public static final String PASSWORD = "";
+
+    public static String embeddedUrl(String name) {
+        return "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+    }
+
+    // 매번 물리 Connection 을 새로 맺는 방식 (DBConnectionUtil 과 같은 비용)
+    public static DataSource driverManager(String name) {
+        DataSource dataSource = new DriverManagerDataSource(embeddedUrl(name), USERNAME, PASSWORD);
+        initSchema(dataSource);
+        return dataSource;
+    }
+
+    public static HikariDataSource hikari(String name, int maximumPoolSize) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(embeddedUrl(name));
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+        dataSource.setMaximumPoolSize(maximumPoolSize);
+        dataSource.setPoolName("BENCH POOL - " + name);
+        initSchema(dataSource);
+        return dataSource;
+    }
+
+    // 직접 만든 Pool (DBConnectionUtil.usePool 과 같은 것)
+    public static SimpleConnectionPool simplePool(String name, int maximumPoolSize) {
+        SimpleConnectionPool dataSource = new SimpleConnectionPool(embeddedUrl(name), USERNAME, PASSWORD, maximumPoolSize);
+        initSchema(dataSource);
+        return dataSource;
+    }
+
+    public static DataSource of(String type, String name, int maximumPoolSize) {
+        if ("HIKARI".equals(type)) {
+            return hikari(name, maximumPoolSize);
+        }
+        if ("SIMPLE".equals(type)) {
+            return simplePool(name, maximumPoolSize);
+        }
+        return driverManager(name);
+    }
+
+    public static void initSchema(DataSource dataSource) {
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+
+    public static void deleteAllMembers(DataSource dataSource) {
+        new JdbcTemplate(dataSource).update("delete from member");
+    }
+
+    public static void close(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            ((HikariDataSource) dataSource).close();
+        }
+        if (dataSource instanceof SimpleConnectionPool) {
+            ((SimpleConnectionPool) dataSource).close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.BloomFilterMemberRepository;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 조회의 절반이 없는 회원 ID 일 때
+ - FIND_BY_ID     : 기존 findById - 없으면 DB 조회 후 NoSuchElementException (stack trace 생성)
+ - OPTIONAL       : findOptionalById - DB 조회는 하지만 예외는 만들지 않는다
+ - BLOOM_OPTIONAL : Bloom Filter 가 "확실히 없음" 인 ID 는 DB 에 가지 않는다
+ ./gradlew jmh -PjmhIncludes=BloomFilterBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class BloomFilterBenchmark {
+
+    private static final int MEMBERS = 10_000;
+
+    @Param({"FIND_BY_ID", "OPTIONAL", "BLOOM_OPTIONAL"})
+    public String mode;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("bloom", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        MemberRepository dbRepository = new MemberRepositoryV4_2(dataSource);
+        List<Member> members = new ArrayList<>(MEMBERS);
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new Member("member" + i, 10000));
+        }
+        dbRepository.saveAll(members);
+
+        memberRepository = "BLOOM_OPTIONAL".equals(mode)
+                ? new BloomFilterMemberRepository(dbRepository, MEMBERS * 2L, 0.01)
+                : dbRepository;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Object lookup() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String memberId = (random.nextBoolean() ? "member" : "unknown") + random.nextInt(MEMBERS);
+
+        if ("FIND_BY_ID".equals(mode)) {
+            try {
+                return memberRepository.findById(memberId);
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+        Optional<Member> member = memberRepository.findOptionalById(memberId);
+        return member.orElse(null);
+    }
+}
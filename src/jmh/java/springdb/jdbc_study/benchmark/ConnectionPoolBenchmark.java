@@ -0,0 +1,75 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.connection.InstrumentedDataSource;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+/*
+ Connection 을 얻고 돌려주는 비용만 비교 - 쓰레드 (8) 가 Pool 크기 (4) 보다 많아서 기다리는 경로도 탄다
+ - DRIVER_MANAGER : 매번 물리 Connection 을 맺고 닫는다 (DBConnectionUtil 기본 경로)
+ - HIKARI         : HikariDataSource
+ - SIMPLE         : SimpleConnectionPool (DBConnectionUtil.usePool)
+ borrowAndRelease 는 빌리고 바로 반납, borrowAndQuery 는 PK 조회 한번까지
+ instrumented = true 면 InstrumentedDataSource 로 감싼다 (측정 / 누수 탐지 자체의 비용, stack 은 100 번에 한번)
+ ./gradlew jmh -PjmhIncludes=ConnectionPoolBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class ConnectionPoolBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+
+    @Param({"DRIVER_MANAGER", "HIKARI", "SIMPLE"})
+    public String dataSourceType;
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private DataSource pool;
+    private DataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = BenchmarkDataSources.of(dataSourceType, "connectionPool", 4);
+        dataSource = instrumented ? new InstrumentedDataSource(pool, Duration.ofSeconds(30), 100) : pool;
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        new MemberRepositoryV4_2(dataSource).saveAll(List.of(new Member(MEMBER_A, 10000)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        if (dataSource instanceof InstrumentedDataSource) {
+            ((InstrumentedDataSource) dataSource).close();
+        }
+        BenchmarkDataSources.close(pool);
+    }
+
+    @Benchmark
+    public boolean borrowAndRelease() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            return con.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public int borrowAndQuery() throws SQLException {
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("select money from member where member_id = ?")) {
+            pstmt.setString(1, MEMBER_A);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.exception.H2ErrorCodeTranslator;
+import springdb.jdbc_study.repository.support.PreparedStatementCache;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.List;
+
+/*
+ 중복 키 예외 경로 비용
+ - translate     : SQLException 하나를 변환만 (DB 없이) - 변환기 자체 비용 + 예외 생성 비용
+ - saveDuplicate : 실제로 중복 저장 후 DuplicateKeyException 을 잡는 전체 경로
+ - SPRING       : SQLErrorCodeSQLExceptionTranslator (메타데이터로 DB 판단 + 코드 목록 탐색)
+ - H2           : H2ErrorCodeTranslator, stack trace 있음
+ - H2_STACKLESS : H2ErrorCodeTranslator, 중복 키는 stack trace 없음
+ ./gradlew jmh -PjmhIncludes=ExceptionPathBenchmark
+ */
+@State(Scope.Benchmark)
+public class ExceptionPathBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+
+    @Param({"SPRING", "H2", "H2_STACKLESS"})
+    public String translatorType;
+
+    private DataSource dataSource;
+    private SQLExceptionTranslator translator;
+    private MemberRepository memberRepository;
+    private SQLException duplicateKey;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("exceptionPath", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        if ("SPRING".equals(translatorType)) {
+            translator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        } else {
+            translator = new H2ErrorCodeTranslator("H2_STACKLESS".equals(translatorType));
+        }
+        memberRepository = new MemberRepositoryV4_2(dataSource, MemberRepositoryV4_2.DEFAULT_BATCH_SIZE,
+                PreparedStatementCache.DEFAULT_MAX_STATEMENTS_PER_CONNECTION, translator);
+        memberRepository.saveAll(List.of(new Member(MEMBER_A, 10000)));
+
+        duplicateKey = new SQLException("Unique index or primary key violation", "23505", 23505);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public DataAccessException translate() {
+        return translator.translate("SAVE EXCEPTION OCCUR", "insert into member(member_id, money) values (?, ?)", duplicateKey);
+    }
+
+    @Benchmark
+    public Object saveDuplicate() {
+        try {
+            return memberRepository.save(new Member(MEMBER_A, 10000));
+        } catch (DuplicateKeyException e) {
+            return e;
+        }
+    }
+}
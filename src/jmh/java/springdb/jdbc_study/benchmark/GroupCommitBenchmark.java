@@ -0,0 +1,87 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.service.GroupCommitTransferService;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 이체마다 트랜젝션 (DIRECT) vs 모아서 한 트랜젝션 (GROUP_COMMIT)
+ - GROUP_COMMIT 은 submit 후 commit 될 때까지 기다린다 (join) - 호출자 입장의 지연까지 포함해서 측정
+ - 내장 mem DB 는 commit 때 디스크 flush 가 없으므로, 실제 디스크 DB 에서는 차이가 더 커진다
+ ./gradlew jmh -PjmhIncludes=GroupCommitBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+public class GroupCommitBenchmark {
+
+    private static final int ACCOUNTS = 64;
+
+    @Param({"DIRECT", "GROUP_COMMIT"})
+    public String mode;
+
+    private DataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV4 memberService;
+    private GroupCommitTransferService groupCommitService;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("groupCommit", 16);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        MemberRepository memberRepository = new MemberRepositoryV4_2(dataSource);
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+        txTemplate = new TransactionTemplate(txManager);
+        memberService = new MemberServiceV4(memberRepository);
+        groupCommitService = new GroupCommitTransferService(txManager, memberRepository);
+
+        memberIds = new ArrayList<>(ACCOUNTS);
+        List<Member> members = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            memberIds.add("g" + i);
+            members.add(new Member("g" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        groupCommitService.close();
+        if ("GROUP_COMMIT".equals(mode) && groupCommitService.getBatchCount() > 0) {
+            System.out.printf("%naverage batch size = %.1f%n",
+                    (double) groupCommitService.getTransferCount() / groupCommitService.getBatchCount());
+        }
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer(TransferBenchmark.TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+
+        try {
+            if ("GROUP_COMMIT".equals(mode)) {
+                groupCommitService.submit(memberIds.get(from), memberIds.get(to), 1).join();
+            } else {
+                txTemplate.executeWithoutResult(status ->
+                        memberService.bizLogicAtomic(memberIds.get(from), memberIds.get(to), 1));
+            }
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+}
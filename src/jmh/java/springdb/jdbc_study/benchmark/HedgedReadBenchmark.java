@@ -0,0 +1,92 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.HedgingMemberRepository;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Primary 가 가끔 (1%) 20ms 씩 멈출 때 findById 의 꼬리 지연 (p99 / p99.9) 비교
+ - SampleTime 모드라 결과에 percentile 이 같이 나온다
+ - hedging = true 면 p95 를 넘긴 조회는 Replica 로 한번 더 보낸다
+ ./gradlew jmh -PjmhIncludes=HedgedReadBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HedgedReadBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+
+    @Param({"false", "true"})
+    public boolean hedging;
+
+    private DataSource primary;
+    private DataSource replica;
+    private MemberRepository memberRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        primary = BenchmarkDataSources.hikari("hedgePrimary", 8);
+        replica = BenchmarkDataSources.hikari("hedgeReplica", 8);
+        BenchmarkDataSources.deleteAllMembers(primary);
+        BenchmarkDataSources.deleteAllMembers(replica);
+        new MemberRepositoryV4_2(primary).saveAll(List.of(new Member(MEMBER_A, 10000)));
+        new MemberRepositoryV4_2(replica).saveAll(List.of(new Member(MEMBER_A, 10000)));
+
+        DataSource slowPrimary = new OccasionallySlowDataSource(primary);
+        memberRepository = hedging
+                ? new HedgingMemberRepository(new MemberRepositoryV4_2(slowPrimary), slowPrimary, replica, 95, Duration.ofMillis(1))
+                : new MemberRepositoryV4_2(slowPrimary);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (memberRepository instanceof HedgingMemberRepository) {
+            HedgingMemberRepository hedgingRepository = (HedgingMemberRepository) memberRepository;
+            System.out.printf("%nhedges=%d, primaryWins=%d, replicaWins=%d, cancels=%d%n",
+                    hedgingRepository.getHedgeCount(), hedgingRepository.getPrimaryWinCount(),
+                    hedgingRepository.getReplicaWinCount(), hedgingRepository.getCancelCount());
+            hedgingRepository.close();
+        }
+        BenchmarkDataSources.deleteAllMembers(primary);
+        BenchmarkDataSources.deleteAllMembers(replica);
+        BenchmarkDataSources.close(primary);
+        BenchmarkDataSources.close(replica);
+    }
+
+    @Benchmark
+    public Member findById() {
+        return memberRepository.findById(MEMBER_A);
+    }
+
+    static class OccasionallySlowDataSource extends DelegatingDataSource {
+
+        OccasionallySlowDataSource(DataSource target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getConnection();
+        }
+    }
+}
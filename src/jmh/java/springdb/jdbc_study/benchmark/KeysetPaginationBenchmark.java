@@ -0,0 +1,79 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.MemberRepositoryV5;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ 같은 페이지 (pageNumber 번째, pageSize 건) 를 OFFSET 으로 읽을 때와 Keyset (findPageAfter) 으로 읽을 때를 비교한다
+ - OFFSET 은 pageNumber 가 커질수록 느려지고, Keyset 은 pageNumber 에 상관없이 거의 일정해야 한다
+ - Keyset 의 cursor (직전 페이지의 마지막 member_id) 는 Setup 에서 미리 구해둔다 (측정 대상 아님)
+ ./gradlew jmh -PjmhIncludes=KeysetPaginationBenchmark
+ */
+@State(Scope.Benchmark)
+public class KeysetPaginationBenchmark {
+
+    private static final int TOTAL_MEMBERS = 100_000;
+
+    @Param({"V4_2", "V5"})
+    public String generation;
+
+    @Param({"OFFSET", "KEYSET"})
+    public String mode;
+
+    @Param({"1", "100", "1000"})
+    public int pageNumber;
+
+    @Param({"50"})
+    public int pageSize;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private JdbcTemplate template;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("keyset", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        template = new JdbcTemplate(dataSource);
+        repository = "V5".equals(generation)
+                ? new MemberRepositoryV5(dataSource)
+                : new MemberRepositoryV4_2(dataSource);
+
+        List<Member> members = new ArrayList<>(TOTAL_MEMBERS);
+        for (int i = 0; i < TOTAL_MEMBERS; i++) {
+            members.add(new Member(String.format("p%07d", i), 10000)); // 문자열 정렬 = 숫자 정렬이 되도록 0 을 채운다
+        }
+        repository.saveAll(members);
+
+        int offset = (pageNumber - 1) * pageSize;
+        cursor = offset == 0 ? null : String.format("p%07d", offset - 1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public List<Member> readPage() {
+        if ("KEYSET".equals(mode)) {
+            MemberPage page = repository.findPageAfter(cursor, pageSize);
+            return page.getMembers();
+        }
+
+        return template.query("select * from member order by member_id limit ? offset ?",
+                (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money")),
+                pageSize, (pageNumber - 1) * pageSize);
+    }
+}
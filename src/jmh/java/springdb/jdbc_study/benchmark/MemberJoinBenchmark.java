@@ -0,0 +1,73 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.dao.DuplicateKeyException;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.support.MemberIdAllocator;
+import springdb.jdbc_study.service.MemberJoinService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 회원 가입 한 건 비용 - 가입할수록 테이블이 차오른다
+ - RANDOM_RETRY : ExceptionTranslatorV1Test 처럼 "user" + 임의 숫자 (0 ~ 9999), 겹치면 다시 뽑아서 저장
+                  처음부터 절반 (5000 개) 을 채워두므로 갈수록 실패한 insert + 예외가 늘어난다
+ - ALLOCATOR    : MemberIdAllocator 로 받은 ID - 겹치지 않는다
+ ./gradlew jmh -PjmhIncludes=MemberJoinBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(4)
+public class MemberJoinBenchmark {
+
+    private static final int RANDOM_RANGE = 10_000;
+
+    @Param({"RANDOM_RETRY", "ALLOCATOR"})
+    public String mode;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+    private MemberJoinService joinService;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("memberJoin", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        List<Member> members = new ArrayList<>(RANDOM_RANGE / 2);
+        for (int i = 0; i < RANDOM_RANGE; i += 2) {
+            members.add(new Member("user" + i, 1000));
+        }
+        memberRepository.saveAll(members);
+        joinService = new MemberJoinService(memberRepository, new MemberIdAllocator(dataSource, "m"));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Member join(TransferBenchmark.TransferCounters counters) {
+        if ("ALLOCATOR".equals(mode)) {
+            counters.committed++;
+            return joinService.join(1000);
+        }
+
+        while (true) {
+            try {
+                Member member = memberRepository.save(new Member("user" + ThreadLocalRandom.current().nextInt(RANDOM_RANGE), 1000));
+                counters.committed++;
+                return member;
+            } catch (DuplicateKeyException e) {
+                counters.failed++; // 실패한 insert 한번
+            }
+        }
+    }
+}
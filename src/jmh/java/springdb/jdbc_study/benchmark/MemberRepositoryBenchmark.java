@@ -0,0 +1,65 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ Repository 세대별 (V1 ~ V5) 호출 1건당 비용 측정
+ - DRIVER_MANAGER : 호출마다 물리 Connection 을 맺는다 (DBConnectionUtil 과 같은 경로)
+ - HIKARI         : Connection Pool 에서 빌려온다
+ - SIMPLE         : 직접 만든 SimpleConnectionPool 에서 빌려온다
+ - V3 이후는 DataSourceUtils, V5 는 JdbcTemplate 을 거치는 비용이 더해진다
+ ./gradlew jmh -PjmhIncludes=MemberRepositoryBenchmark
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryBenchmark {
+
+    private static final String HOT_MEMBER = "hotMember";
+
+    @Param({"V1", "V2", "V3", "V4_1", "V4_2", "V5"})
+    public String generation;
+
+    @Param({"DRIVER_MANAGER", "HIKARI", "SIMPLE"})
+    public String dataSourceType;
+
+    private DataSource dataSource;
+    private RepositoryOps repository;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = BenchmarkDataSources.of(dataSourceType, "repository", 10);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        repository = RepositoryOps.of(generation, dataSource);
+        repository.save(new Member(HOT_MEMBER, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(HOT_MEMBER);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(HOT_MEMBER, 20000);
+    }
+
+    // 같은 ID 로 계속 save 할 수 없으므로, 저장한 것을 바로 지운다 (save + delete 2회 호출 비용)
+    @Benchmark
+    public void saveAndDelete() throws SQLException {
+        String memberId = "b" + sequence.incrementAndGet();
+        repository.save(new Member(memberId, 10000));
+        repository.delete(memberId);
+    }
+}
@@ -0,0 +1,50 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ V0 는 DBConnectionUtil 을 통해 ConnectionConst.URL 로 고정 연결되므로 내장 DB 로 돌릴 수 없다
+ - Test 들과 마찬가지로 로컬 H2 서버가 떠 있어야 한다
+ - 내장 DB 기준 DriverManager 비용은 MemberRepositoryBenchmark 의 DRIVER_MANAGER 결과로 비교하면 된다
+ ./gradlew jmh -PjmhIncludes=MemberRepositoryV0Benchmark
+ */
+@State(Scope.Benchmark)
+public class MemberRepositoryV0Benchmark {
+
+    private static final String HOT_MEMBER = "benchV0";
+
+    private RepositoryOps repository;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        repository = RepositoryOps.of("V0", null);
+        repository.save(new Member(HOT_MEMBER, 10000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        repository.delete(HOT_MEMBER);
+    }
+
+    @Benchmark
+    public Member findById() throws SQLException {
+        return repository.findById(HOT_MEMBER);
+    }
+
+    @Benchmark
+    public void update() throws SQLException {
+        repository.update(HOT_MEMBER, 20000);
+    }
+
+    @Benchmark
+    public void saveAndDelete() throws SQLException {
+        String memberId = "v0_" + sequence.incrementAndGet();
+        repository.save(new Member(memberId, 10000));
+        repository.delete(memberId);
+    }
+}
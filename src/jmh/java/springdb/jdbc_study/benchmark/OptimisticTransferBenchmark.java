@@ -0,0 +1,87 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.service.MemberServiceV4;
+import springdb.jdbc_study.service.MemberServiceV4_Optimistic;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 경합이 있는 동시 이체 - 낙관적 락 (OPTIMISTIC, version CAS + 재시도) vs 비관적 락 (PESSIMISTIC, select ... for update)
+ - accounts 가 적을수록 같은 row 에 몰려 충돌 / lock 대기가 늘어난다
+ - 충돌 / 재시도 / 포기 횟수는 Trial 이 끝날 때 출력한다
+ ./gradlew jmh -PjmhIncludes=OptimisticTransferBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class OptimisticTransferBenchmark {
+
+    @Param({"OPTIMISTIC", "PESSIMISTIC"})
+    public String mode;
+
+    @Param({"4", "64"})
+    public int accounts;
+
+    private DataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV4 pessimisticService;
+    private MemberServiceV4_Optimistic optimisticService;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("optimistic", 16);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        MemberRepository memberRepository = new MemberRepositoryV4_2(dataSource);
+        DataSourceTransactionManager txManager = new DataSourceTransactionManager(dataSource);
+        txTemplate = new TransactionTemplate(txManager);
+        pessimisticService = new MemberServiceV4(memberRepository);
+        optimisticService = new MemberServiceV4_Optimistic(txManager, memberRepository);
+
+        memberIds = new ArrayList<>(accounts);
+        List<Member> members = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            memberIds.add("o" + i);
+            members.add(new Member("o" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if ("OPTIMISTIC".equals(mode)) {
+            System.out.printf("%n[accounts=%d] conflicts=%d, retries=%d, exhausted=%d%n", accounts,
+                    optimisticService.getConflictCount(), optimisticService.getRetryCount(), optimisticService.getExhaustedCount());
+        }
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer(TransferBenchmark.TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+
+        try {
+            if ("OPTIMISTIC".equals(mode)) {
+                optimisticService.accountTransfer(memberIds.get(from), memberIds.get(to), 1);
+            } else {
+                txTemplate.executeWithoutResult(status ->
+                        pessimisticService.bizLogicForUpdate(memberIds.get(from), memberIds.get(to), 1));
+            }
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.connection.MemberReplicationShim;
+import springdb.jdbc_study.connection.ReadWriteRoutingDataSource;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.ReplicaReadMemberRepository;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 조회 (findById, 트랜젝션 밖) 와 이체 (bizLogicAtomic) 가 같이 돌 때
+ - PRIMARY : 모두 Primary Pool 하나에서
+ - REPLICA : 조회는 Replica Pool 로 빠지고, 이체만 Primary Pool 을 쓴다
+ ./gradlew jmh -PjmhIncludes=ReadReplicaBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class ReadReplicaBenchmark {
+
+    private static final int MEMBERS = 64;
+
+    @Param({"PRIMARY", "REPLICA"})
+    public String routing;
+
+    private DataSource primary;
+    private DataSource replica;
+    private MemberReplicationShim replicationShim;
+    private MemberRepository memberRepository;
+    private MemberServiceV4 memberService;
+    private TransactionTemplate txTemplate;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        primary = BenchmarkDataSources.hikari("rwPrimary", 4);
+        replica = BenchmarkDataSources.hikari("rwReplica", 4);
+        BenchmarkDataSources.deleteAllMembers(primary);
+
+        DataSource dataSource = primary;
+        if ("REPLICA".equals(routing)) {
+            ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource(primary, replica, Duration.ZERO);
+            dataSource = routingDataSource.lazyProxy();
+            memberRepository = new ReplicaReadMemberRepository(new MemberRepositoryV4_2(dataSource), routingDataSource);
+        } else {
+            memberRepository = new MemberRepositoryV4_2(dataSource);
+        }
+        memberService = new MemberServiceV4(memberRepository);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        memberIds = new ArrayList<>(MEMBERS);
+        List<Member> members = new ArrayList<>(MEMBERS);
+        for (int i = 0; i < MEMBERS; i++) {
+            memberIds.add("member" + i);
+            members.add(new Member("member" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+
+        replicationShim = new MemberReplicationShim(primary, replica, Duration.ofMillis(100));
+        replicationShim.replicateNow();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        replicationShim.close();
+        BenchmarkDataSources.deleteAllMembers(primary);
+        BenchmarkDataSources.close(primary);
+        BenchmarkDataSources.close(replica);
+    }
+
+    // 조회 9 : 이체 1
+    @Benchmark
+    public void mixed(TransferBenchmark.TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String fromId = memberIds.get(random.nextInt(MEMBERS));
+        if (random.nextInt(10) != 0) {
+            memberRepository.findById(fromId);
+            return;
+        }
+        String toId = memberIds.get(random.nextInt(MEMBERS));
+        try {
+            txTemplate.executeWithoutResult(status -> memberService.bizLogicAtomic(fromId, toId, 1));
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+}
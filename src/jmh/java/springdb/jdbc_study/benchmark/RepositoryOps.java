@@ -0,0 +1,108 @@
+package springdb.jdbc_study.benchmark;
+
+import org.springframework.jdbc.support.JdbcUtils;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.*;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/*
+ 세대마다 Repository 의 시그니처가 달라서 (SQLException 유무, V2 의 Connection 파라미터)
+ 벤치마크에서 같은 모양으로 호출할 수 있도록 맞춰주는 어댑터
+ */
+interface RepositoryOps {
+
+    Member save(Member member) throws SQLException;
+
+    Member findById(String memberId) throws SQLException;
+
+    void update(String memberId, int money) throws SQLException;
+
+    void delete(String memberId) throws SQLException;
+
+    static RepositoryOps of(String generation, DataSource dataSource) {
+        switch (generation) {
+            case "V0":
+                return forV0(new MemberRepositoryV0());
+            case "V1":
+                return forV1(new MemberRepositoryV1(dataSource));
+            case "V2":
+                return forV2(new MemberRepositoryV2(dataSource), dataSource);
+            case "V3":
+                return forV3(new MemberRepositoryV3(dataSource));
+            case "V4_1":
+                return forInterface(new MemberRepositoryV4_1(dataSource));
+            case "V4_2":
+                return forInterface(new MemberRepositoryV4_2(dataSource));
+            case "V5":
+                return forInterface(new MemberRepositoryV5(dataSource));
+            default:
+                throw new IllegalArgumentException("unknown generation = " + generation);
+        }
+    }
+
+    private static RepositoryOps forV0(MemberRepositoryV0 repository) {
+        return new RepositoryOps() {
+            public Member save(Member member) throws SQLException { return repository.save(member); }
+            public Member findById(String memberId) throws SQLException { return repository.findById(memberId); }
+            public void update(String memberId, int money) throws SQLException { repository.update(memberId, money); }
+            public void delete(String memberId) throws SQLException { repository.delete(memberId); }
+        };
+    }
+
+    private static RepositoryOps forV1(MemberRepositoryV1 repository) {
+        return new RepositoryOps() {
+            public Member save(Member member) throws SQLException { return repository.save(member); }
+            public Member findById(String memberId) throws SQLException { return repository.findById(memberId); }
+            public void update(String memberId, int money) throws SQLException { repository.update(memberId, money); }
+            public void delete(String memberId) throws SQLException { repository.delete(memberId); }
+        };
+    }
+
+    // V2 는 Service 가 Connection 을 넘겨주는 구조이므로, 호출마다 Connection 을 얻고 닫는 비용까지 포함한다
+    private static RepositoryOps forV2(MemberRepositoryV2 repository, DataSource dataSource) {
+        return new RepositoryOps() {
+            public Member save(Member member) throws SQLException { return repository.save(member); }
+
+            public Member findById(String memberId) throws SQLException {
+                Connection con = dataSource.getConnection();
+                try {
+                    return repository.findById(con, memberId);
+                } finally {
+                    JdbcUtils.closeConnection(con);
+                }
+            }
+
+            public void update(String memberId, int money) throws SQLException {
+                Connection con = dataSource.getConnection();
+                try {
+                    repository.update(con, memberId, money);
+                } finally {
+                    JdbcUtils.closeConnection(con);
+                }
+            }
+
+            public void delete(String memberId) throws SQLException { repository.delete(memberId); }
+        };
+    }
+
+    private static RepositoryOps forV3(MemberRepositoryV3 repository) {
+        return new RepositoryOps() {
+            public Member save(Member member) throws SQLException { return repository.save(member); }
+            public Member findById(String memberId) throws SQLException { return repository.findById(memberId); }
+            public void update(String memberId, int money) throws SQLException { repository.update(memberId, money); }
+            public void delete(String memberId) throws SQLException { repository.delete(memberId); }
+        };
+    }
+
+    private static RepositoryOps forInterface(MemberRepository repository) {
+        return new RepositoryOps() {
+            public Member save(Member member) { return repository.save(member); }
+            public Member findById(String memberId) { return repository.findById(memberId); }
+            public void update(String memberId, int money) { repository.update(memberId, money); }
+            public void delete(String memberId) { repository.delete(memberId); }
+        };
+    }
+}
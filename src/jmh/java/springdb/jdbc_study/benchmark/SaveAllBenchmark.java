@@ -0,0 +1,78 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_1;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.MemberRepositoryV5;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ save 를 members 수만큼 반복 (LOOP) vs saveAll 한번 (BATCH)
+ 1회 호출 = members 건 등록이므로, 건당 비용은 결과를 members 로 나눠서 보면 된다
+ ./gradlew jmh -PjmhIncludes=SaveAllBenchmark
+ */
+@State(Scope.Benchmark)
+public class SaveAllBenchmark {
+
+    @Param({"V4_1", "V4_2", "V5"})
+    public String generation;
+
+    @Param({"LOOP", "BATCH"})
+    public String mode;
+
+    @Param({"100", "1000"})
+    public int members;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private List<Member> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("saveAll", 4);
+        switch (generation) {
+            case "V4_1":
+                repository = new MemberRepositoryV4_1(dataSource);
+                break;
+            case "V4_2":
+                repository = new MemberRepositoryV4_2(dataSource);
+                break;
+            default:
+                repository = new MemberRepositoryV5(dataSource);
+        }
+
+        batch = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            batch.add(new Member("s" + i, 10000));
+        }
+    }
+
+    // 같은 ID 들을 매번 다시 넣을 수 있도록 비워준다 (측정 대상 아님)
+    @Setup(Level.Invocation)
+    public void clear() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void insertMembers() {
+        if ("BATCH".equals(mode)) {
+            repository.saveAll(batch);
+            return;
+        }
+
+        for (Member member : batch) {
+            repository.save(member);
+        }
+    }
+}
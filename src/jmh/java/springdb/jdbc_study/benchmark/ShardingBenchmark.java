@@ -0,0 +1,82 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberShard;
+import springdb.jdbc_study.repository.ShardedMemberRepository;
+import springdb.jdbc_study.service.ShardedTransferService;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 회원을 shards 개의 내장 H2 DB 에 나눠 두고 임의의 두 회원 사이 이체
+ - shards = 1 이면 모든 이체가 한 DB 의 한 트랜젝션 (bizLogicAtomic 과 같다)
+ - shards 가 늘면 DB 별 부하는 나뉘지만, 다른 샤드 이체 비율 (1 - 1/shards) 만큼 트랜젝션 3번짜리 Saga 가 된다
+ ./gradlew jmh -PjmhIncludes=ShardingBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class ShardingBenchmark {
+
+    private static final int MEMBERS = 256;
+
+    @Param({"1", "2", "4"})
+    public int shards;
+
+    private List<DataSource> dataSources;
+    private ShardedMemberRepository memberRepository;
+    private ShardedTransferService transferService;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSources = new ArrayList<>(shards);
+        List<MemberShard> memberShards = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            DataSource dataSource = BenchmarkDataSources.hikari("shard" + i, 8);
+            dataSources.add(dataSource);
+            memberShards.add(new MemberShard("shard" + i, dataSource));
+        }
+        memberRepository = new ShardedMemberRepository(memberShards);
+        transferService = new ShardedTransferService(memberRepository);
+        clear();
+
+        memberIds = new ArrayList<>(MEMBERS);
+        List<Member> members = new ArrayList<>(MEMBERS);
+        for (int i = 0; i < MEMBERS; i++) {
+            memberIds.add("member" + i);
+            members.add(new Member("member" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clear();
+        dataSources.forEach(BenchmarkDataSources::close);
+    }
+
+    @Benchmark
+    public void transfer(TransferBenchmark.TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String fromId = memberIds.get(random.nextInt(MEMBERS));
+        String toId = memberIds.get(random.nextInt(MEMBERS));
+        try {
+            transferService.accountTransfer(fromId, toId, 1);
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+
+    private void clear() {
+        for (MemberShard shard : memberRepository.getShards()) {
+            shard.getTemplate().update("delete from member");
+            shard.getTemplate().update("delete from transfer_intent");
+            shard.getTemplate().update("delete from transfer_applied");
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.SingleFlightMemberRepository;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+ 16 쓰레드가 같은 회원 하나를 계속 findById - Pool 은 4 개뿐이라 Connection 을 기다리는 시간이 크다
+ - singleFlight = true 면 동시에 들어온 조회가 DB 조회 하나로 합쳐진다
+ ./gradlew jmh -PjmhIncludes=SingleFlightBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(16)
+public class SingleFlightBenchmark {
+
+    private static final String HOT_MEMBER = "hotMember";
+
+    @Param({"false", "true"})
+    public boolean singleFlight;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("singleFlight", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        MemberRepository dbRepository = new MemberRepositoryV4_2(dataSource);
+        dbRepository.saveAll(List.of(new Member(HOT_MEMBER, 10000)));
+        memberRepository = singleFlight ? new SingleFlightMemberRepository(dbRepository) : dbRepository;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (memberRepository instanceof SingleFlightMemberRepository) {
+            System.out.printf("%ncoalescing ratio = %.3f%n", ((SingleFlightMemberRepository) memberRepository).getCoalescingRatio());
+        }
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public Member findHotMember() {
+        return memberRepository.findById(HOT_MEMBER);
+    }
+}
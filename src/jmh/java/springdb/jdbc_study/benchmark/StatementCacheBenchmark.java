@@ -0,0 +1,56 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/*
+ bizLogic 과 같은 모양 (한 트랜젝션에서 findById 2번 + update 2번) 으로
+ PreparedStatement 캐시 유무 (statementCacheSize 0 / 32) 를 비교한다
+ ./gradlew jmh -PjmhIncludes=StatementCacheBenchmark
+ */
+@State(Scope.Benchmark)
+public class StatementCacheBenchmark {
+
+    private static final String MEMBER_A = "memberA";
+    private static final String MEMBER_B = "memberB";
+
+    @Param({"0", "32"})
+    public int statementCacheSize;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+    private TransactionTemplate txTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("statementCache", 4);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource, MemberRepositoryV4_2.DEFAULT_BATCH_SIZE, statementCacheSize);
+        memberRepository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 10000)));
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void findTwiceUpdateTwice() {
+        txTemplate.executeWithoutResult(status -> {
+            Member memberA = memberRepository.findById(MEMBER_A);
+            Member memberB = memberRepository.findById(MEMBER_B);
+            memberRepository.update(MEMBER_A, memberA.getMoney());
+            memberRepository.update(MEMBER_B, memberB.getMoney());
+        });
+    }
+}
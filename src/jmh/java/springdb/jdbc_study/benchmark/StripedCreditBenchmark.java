@@ -0,0 +1,79 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.StripedMemberRepository;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 모든 이체가 한 가맹점 (MERCHANT) 으로 들어오는 상황 - bizLogicAtomic (출금 -> 입금) 을 한 트랜젝션으로
+ - stripes = 1 이면 모든 입금이 가맹점 row lock 하나를 commit 까지 잡고 있으므로 직렬화된다
+ - stripes 가 늘어날수록 동시에 진행되는 입금 수가 늘어나야 한다
+ ./gradlew jmh -PjmhIncludes=StripedCreditBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class StripedCreditBenchmark {
+
+    private static final String MERCHANT = "merchant";
+    private static final int PAYERS = 64;
+
+    @Param({"1", "4", "16"})
+    public int stripes;
+
+    private DataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV4 memberService;
+    private List<String> payerIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("striped", 16);
+        clear();
+
+        StripedMemberRepository memberRepository =
+                new StripedMemberRepository(new MemberRepositoryV4_2(dataSource), dataSource, stripes);
+        memberService = new MemberServiceV4(memberRepository);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        payerIds = new ArrayList<>(PAYERS);
+        List<Member> members = new ArrayList<>(PAYERS + 1);
+        members.add(new Member(MERCHANT, 0));
+        for (int i = 0; i < PAYERS; i++) {
+            payerIds.add("payer" + i);
+            members.add(new Member("payer" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        clear();
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void payMerchant(TransferBenchmark.TransferCounters counters) {
+        String payerId = payerIds.get(ThreadLocalRandom.current().nextInt(PAYERS));
+        try {
+            txTemplate.executeWithoutResult(status -> memberService.bizLogicAtomic(payerId, MERCHANT, 1));
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+
+    private void clear() {
+        new JdbcTemplate(dataSource).update("delete from member_stripe");
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+    }
+}
@@ -0,0 +1,102 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ 동시 이체 처리량 - 조회 후 절대값 update (LEGACY) vs 상대값 update (ATOMIC)
+   vs select ... for update 를 from -> to 순서로 (FOR_UPDATE) vs memberId 순서로 (LOCK_ORDERED)
+ - Spring Container 없이 돌리므로 @Transactional 대신 TransactionTemplate 으로 bizLogic 을 감싼다
+ - 실패 (Lock 타임아웃, 데드락, 잔액 부족) 는 TransferCounters 로 따로 센다 - LOCK_ORDERED 는 0 이어야 한다
+ ./gradlew jmh -PjmhIncludes=TransferBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class TransferBenchmark {
+
+    @Param({"LEGACY", "ATOMIC", "FOR_UPDATE", "LOCK_ORDERED"})
+    public String mode;
+
+    @Param({"4", "64"})
+    public int accounts; // 적을수록 같은 row 에 몰린다
+
+    private DataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV4 memberService;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("transfer", 16);
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+
+        MemberRepository memberRepository = new MemberRepositoryV4_2(dataSource);
+        memberService = new MemberServiceV4(memberRepository);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        memberIds = new ArrayList<>(accounts);
+        List<Member> members = new ArrayList<>(accounts);
+        for (int i = 0; i < accounts; i++) {
+            memberIds.add("t" + i);
+            members.add(new Member("t" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer(TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(accounts);
+        int to = (from + 1 + random.nextInt(accounts - 1)) % accounts;
+
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                switch (mode) {
+                    case "ATOMIC":
+                        memberService.bizLogicAtomic(memberIds.get(from), memberIds.get(to), 1);
+                        break;
+                    case "FOR_UPDATE":
+                        memberService.bizLogicForUpdate(memberIds.get(from), memberIds.get(to), 1);
+                        break;
+                    case "LOCK_ORDERED":
+                        memberService.bizLogicLockOrdered(memberIds.get(from), memberIds.get(to), 1);
+                        break;
+                    default:
+                        memberService.bizLogic(memberIds.get(from), memberIds.get(to), 1);
+                }
+            });
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class TransferCounters {
+        public long committed;
+        public long failed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            committed = 0;
+            failed = 0;
+        }
+    }
+}
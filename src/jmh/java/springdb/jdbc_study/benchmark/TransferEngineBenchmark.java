@@ -0,0 +1,107 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.engine.TransferEngine;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ DB 트랜젝션 이체 (DATABASE - bizLogicAtomic) vs 메모리 엔진 (ENGINE : WAL 은 페이지 캐시까지, ENGINE_FORCE : 디스크까지)
+ - 엔진의 지연시간 분포 (p50 / p99 / p99.9) 는 Trial 이 끝날 때 출력한다
+ ./gradlew jmh -PjmhIncludes=TransferEngineBenchmark
+ */
+@State(Scope.Benchmark)
+@Threads(8)
+public class TransferEngineBenchmark {
+
+    private static final int ACCOUNTS = 64;
+
+    @Param({"DATABASE", "ENGINE", "ENGINE_FORCE"})
+    public String mode;
+
+    @Param({"4"})
+    public int partitions;
+
+    private DataSource dataSource;
+    private TransactionTemplate txTemplate;
+    private MemberServiceV4 memberService;
+    private TransferEngine engine;
+    private Path walDirectory;
+    private List<String> memberIds;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataSource = BenchmarkDataSources.hikari("engine", 16);
+        clear();
+
+        MemberRepository memberRepository = new MemberRepositoryV4_2(dataSource);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        memberService = new MemberServiceV4(memberRepository);
+
+        memberIds = new ArrayList<>(ACCOUNTS);
+        List<Member> members = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            memberIds.add("w" + i);
+            members.add(new Member("w" + i, 1_000_000_000));
+        }
+        memberRepository.saveAll(members);
+
+        if (!"DATABASE".equals(mode)) {
+            walDirectory = Files.createTempDirectory("transfer-engine-bench");
+            engine = new TransferEngine(memberRepository, dataSource, walDirectory, partitions, "ENGINE_FORCE".equals(mode));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (engine != null) {
+            System.out.printf("%n[%s] %s%n", mode, engine.getLatency().summary());
+            engine.close();
+            try (var files = Files.list(walDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(walDirectory);
+        }
+        clear();
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void transfer(TransferBenchmark.TransferCounters counters) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = random.nextInt(ACCOUNTS);
+        int to = (from + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS;
+
+        try {
+            if (engine != null) {
+                engine.transfer(memberIds.get(from), memberIds.get(to), 1).join();
+            } else {
+                txTemplate.executeWithoutResult(status ->
+                        memberService.bizLogicAtomic(memberIds.get(from), memberIds.get(to), 1));
+            }
+            counters.committed++;
+        } catch (RuntimeException e) {
+            counters.failed++;
+        }
+    }
+
+    private void clear() {
+        new JdbcTemplate(dataSource).update("delete from engine_checkpoint");
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+    }
+}
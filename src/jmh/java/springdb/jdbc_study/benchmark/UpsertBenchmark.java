@@ -0,0 +1,95 @@
+package springdb.jdbc_study.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.dao.EmptyResultDataAccessException;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.MemberRepositoryV5;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/*
+ 동기화 작업 모양 - members 건 중 절반은 이미 있는 회원 (수정), 절반은 없는 회원 (등록)
+ - LOOKUP_THEN_WRITE : findById -> 있으면 update, 없으면 (NoSuchElementException / EmptyResultDataAccessException) save (건당 2번 왕복 + 없으면 예외)
+ - UPSERT            : upsert 를 members 번 (건당 1번 왕복)
+ - UPSERT_ALL        : upsertAll 한번 (batch)
+ 1회 호출 = members 건이므로, 건당 비용은 결과를 members 로 나눠서 보면 된다
+ ./gradlew jmh -PjmhIncludes=UpsertBenchmark
+ */
+@State(Scope.Benchmark)
+public class UpsertBenchmark {
+
+    @Param({"V4_2", "V5"})
+    public String generation;
+
+    @Param({"LOOKUP_THEN_WRITE", "UPSERT", "UPSERT_ALL"})
+    public String mode;
+
+    @Param({"1000"})
+    public int members;
+
+    private DataSource dataSource;
+    private MemberRepository repository;
+    private List<Member> existing;
+    private List<Member> sync;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = BenchmarkDataSources.hikari("upsert", 4);
+        repository = "V4_2".equals(generation) ? new MemberRepositoryV4_2(dataSource) : new MemberRepositoryV5(dataSource);
+
+        existing = new ArrayList<>(members / 2);
+        sync = new ArrayList<>(members);
+        for (int i = 0; i < members; i++) {
+            if (i % 2 == 0) {
+                existing.add(new Member("u" + i, 10000));
+            }
+            sync.add(new Member("u" + i, 20000));
+        }
+    }
+
+    // 매번 절반만 있는 상태에서 시작한다 (측정 대상 아님)
+    @Setup(Level.Invocation)
+    public void reset() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        repository.saveAll(existing);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDataSources.deleteAllMembers(dataSource);
+        BenchmarkDataSources.close(dataSource);
+    }
+
+    @Benchmark
+    public void syncMembers() {
+        switch (mode) {
+            case "UPSERT_ALL":
+                repository.upsertAll(sync);
+                return;
+            case "UPSERT":
+                for (Member member : sync) {
+                    repository.upsert(member);
+                }
+                return;
+            default:
+                for (Member member : sync) {
+                    lookupThenWrite(member);
+                }
+        }
+    }
+
+    // 지금 동기화 작업이 하는 방식
+    private void lookupThenWrite(Member member) {
+        try {
+            repository.findById(member.getMemberId());
+            repository.update(member.getMemberId(), member.getMoney());
+        } catch (NoSuchElementException | EmptyResultDataAccessException e) { // V5 는 Template 예외
+            repository.save(member);
+        }
+    }
+}
@@ -11,12 +11,24 @@ import static springdb.jdbc_study.connection.ConnectionConst.*;
 @Slf4j
 public class DBConnectionUtil {
 
+    // null 이면 강의 때처럼 매번 DriverManager 로 맺는다
+    private static volatile SimpleConnectionPool pool;
+
     /*
      Driver Manager 에서 직접 Connection 을 연결하여 맺어오는 행위 (DataSource API 미적용)
+     - usePool 이후에는 SimpleConnectionPool 에서 빌려온다 (close 하면 반납)
      */
     public static Connection getConnection() {
 
+        SimpleConnectionPool currentPool = pool;
+
         try {
+            if (currentPool != null) {
+                Connection connection = currentPool.getConnection();
+                log.debug("get pooled connection info = {}", connection); // 부하 중에는 INFO 로그도 비용이다
+                return connection;
+            }
+
             Connection connection = DriverManager.getConnection(URL, USERNAME, PASSWORD);
             log.info("get connection info = {}, class = {}", connection, connection.getClass());
             return connection;
@@ -25,4 +37,28 @@ public class DBConnectionUtil {
         }
 
     }
+
+    /*
+     아직 DBConnectionUtil 을 쓰는 코드 (V0 ...) 를 그대로 두고 Pool 로 바꿀 때
+     - 같은 크기로 다시 부르면 그대로 둔다
+     - 이미 다른 크기의 Pool 을 쓰는 중이면 예외 - 크기를 바꾸려면 useDriverManager 로 닫은 다음 다시 부른다
+     */
+    public static synchronized void usePool(int maximumPoolSize) {
+        if (pool == null) {
+            pool = new SimpleConnectionPool(URL, USERNAME, PASSWORD, maximumPoolSize);
+            return;
+        }
+        if (pool.getMaximumPoolSize() != maximumPoolSize) {
+            throw new IllegalStateException("pool already in use maximumPoolSize = " + pool.getMaximumPoolSize()
+                    + ", requested = " + maximumPoolSize);
+        }
+    }
+
+    // 다시 DriverManager 로 - 놀고 있는 Connection 은 바로 닫고, 빌려간 것은 반납할 때 닫힌다
+    public static synchronized void useDriverManager() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
 }
@@ -0,0 +1,336 @@
+package springdb.jdbc_study.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import springdb.jdbc_study.support.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ 어떤 DataSource (Hikari / SimpleConnectionPool / DriverManager ...) 든 감싸서 Connection 사용을 측정한다
+ - acquire : getConnection 에서 기다린 시간
+ - hold    : 빌려가서 close 할 때까지의 시간
+ - usage   : 빌려줄 때 동시에 빌려가 있던 Connection 수
+ - leakThreshold 보다 오래 반납하지 않은 Connection 은 WARN 로그 + leakCount (한 Connection 에 한번)
+   > stackSampleEvery 번에 한번만 빌려간 곳의 stack 을 잡아둔다 - 매번 잡으면 Throwable 생성 비용이 크다 (0 이면 잡지 않는다)
+ - Connection 을 반납할 때 아직 닫지 않은 Statement 가 있으면 unclosedStatementCount
+   > MemberRepositoryV1.close 처럼 Connection 을 먼저 닫는 코드를 찾는다
+ - registerMBean 으로 JMX 에 올리면 JConsole 에서 볼 수 있다
+ */
+@Slf4j
+public class InstrumentedDataSource extends DelegatingDataSource implements InstrumentedDataSourceMXBean, AutoCloseable {
+
+    public static final String OBJECT_NAME_PREFIX = "springdb.jdbc_study:type=InstrumentedDataSource,name=";
+
+    private final int stackSampleEvery;
+    private volatile long leakThresholdNanos;
+
+    private final LatencyHistogram acquireHistogram = new LatencyHistogram();
+    private final LatencyHistogram holdHistogram = new LatencyHistogram();
+    private final LatencyHistogram usageHistogram = new LatencyHistogram(); // 값이 작아서 (< 32) 칸이 정확하다
+
+    private final Map<Lease, Boolean> activeLeases = new ConcurrentHashMap<>();
+    private final AtomicLong acquireSequence = new AtomicLong();
+    private final LongAdder leakCount = new LongAdder();
+    private final LongAdder unclosedStatementCount = new LongAdder();
+    private final ScheduledExecutorService leakDetector;
+    private volatile ObjectName objectName;
+
+    public InstrumentedDataSource(DataSource target, Duration leakThreshold, int stackSampleEvery) {
+        super(target);
+        if (stackSampleEvery < 0) {
+            throw new IllegalArgumentException("stackSampleEvery must not be negative = " + stackSampleEvery);
+        }
+        this.stackSampleEvery = stackSampleEvery;
+        this.leakThresholdNanos = leakThreshold.toNanos();
+
+        long periodMillis = Math.min(Math.max(leakThreshold.toMillis() / 2, 100), 5_000);
+        this.leakDetector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-leak-detector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leakDetector.scheduleWithFixedDelay(this::detectLeaks, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection();
+        return lease(connection, start);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = obtainTargetDataSource().getConnection(username, password);
+        return lease(connection, start);
+    }
+
+    // leakThreshold 를 넘긴 Connection 을 찾아서 알린다 - 주기적으로 불리고, 테스트에서는 직접 부른다
+    public int detectLeaks() {
+        long now = System.nanoTime();
+        long threshold = leakThresholdNanos;
+        int detected = 0;
+        for (Lease lease : activeLeases.keySet()) {
+            if (now - lease.acquiredNanos > threshold && lease.reported.compareAndSet(false, true)) {
+                leakCount.increment();
+                detected++;
+                log.warn("connection leak suspected - held {}ms by thread {} (threshold {}ms)",
+                        TimeUnit.NANOSECONDS.toMillis(now - lease.acquiredNanos), lease.threadName,
+                        TimeUnit.NANOSECONDS.toMillis(threshold), lease.acquiredAt); // stack 을 잡지 않았으면 null 이라 생략된다
+            }
+        }
+        return detected;
+    }
+
+    public void registerMBean(String name) {
+        try {
+            ObjectName newName = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, newName);
+            objectName = newName;
+        } catch (JMException e) {
+            throw new IllegalStateException("failed to register MBean = " + name, e);
+        }
+    }
+
+    // 감싼 DataSource 는 닫지 않는다 (만든 쪽이 닫는다)
+    @Override
+    public void close() {
+        leakDetector.shutdownNow();
+        ObjectName registered = objectName;
+        if (registered != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(registered);
+            } catch (JMException e) {
+                log.warn("failed to unregister MBean = {}", registered, e);
+            }
+            objectName = null;
+        }
+    }
+
+    public LatencyHistogram getAcquireHistogram() {
+        return acquireHistogram;
+    }
+
+    public LatencyHistogram getHoldHistogram() {
+        return holdHistogram;
+    }
+
+    public LatencyHistogram getUsageHistogram() {
+        return usageHistogram;
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return acquireHistogram.getCount();
+    }
+
+    @Override
+    public long getAcquireP50Micros() {
+        return micros(acquireHistogram.percentileNanos(50));
+    }
+
+    @Override
+    public long getAcquireP99Micros() {
+        return micros(acquireHistogram.percentileNanos(99));
+    }
+
+    @Override
+    public long getAcquireMaxMicros() {
+        return micros(acquireHistogram.getMaxNanos());
+    }
+
+    @Override
+    public long getHoldP50Micros() {
+        return micros(holdHistogram.percentileNanos(50));
+    }
+
+    @Override
+    public long getHoldP99Micros() {
+        return micros(holdHistogram.percentileNanos(99));
+    }
+
+    @Override
+    public long getHoldMaxMicros() {
+        return micros(holdHistogram.getMaxNanos());
+    }
+
+    @Override
+    public long getUsageP50() {
+        return usageHistogram.percentileNanos(50);
+    }
+
+    @Override
+    public long getUsageP99() {
+        return usageHistogram.percentileNanos(99);
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return activeLeases.size();
+    }
+
+    @Override
+    public long getLeakCount() {
+        return leakCount.sum();
+    }
+
+    @Override
+    public long getUnclosedStatementCount() {
+        return unclosedStatementCount.sum();
+    }
+
+    @Override
+    public long getLeakThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(leakThresholdNanos);
+    }
+
+    // 다음 detectLeaks 부터 적용 (점검 주기는 그대로)
+    @Override
+    public void setLeakThresholdMillis(long leakThresholdMillis) {
+        this.leakThresholdNanos = TimeUnit.MILLISECONDS.toNanos(leakThresholdMillis);
+    }
+
+    @Override
+    public void resetStatistics() {
+        acquireHistogram.reset();
+        holdHistogram.reset();
+        usageHistogram.reset();
+        leakCount.reset();
+        unclosedStatementCount.reset();
+    }
+
+    private Connection lease(Connection connection, long start) {
+        long acquired = System.nanoTime();
+        acquireHistogram.record(acquired - start);
+
+        Lease lease = new Lease(acquired, Thread.currentThread().getName(), sampleStack());
+        activeLeases.put(lease, Boolean.TRUE);
+        usageHistogram.record(activeLeases.size());
+
+        return lease.wrap(connection);
+    }
+
+    private Throwable sampleStack() {
+        if (stackSampleEvery == 0 || acquireSequence.incrementAndGet() % stackSampleEvery != 0) {
+            return null;
+        }
+        return new Throwable("connection acquired here");
+    }
+
+    private void release(Lease lease) {
+        long held = System.nanoTime() - lease.acquiredNanos;
+        holdHistogram.record(held);
+        activeLeases.remove(lease);
+
+        if (lease.openStatements.get() > 0) {
+            unclosedStatementCount.increment();
+            log.debug("connection returned with {} open statement(s), thread = {}", lease.openStatements.get(), lease.threadName);
+        }
+        if (lease.reported.get()) {
+            log.info("previously reported connection returned after {}ms, thread = {}", TimeUnit.NANOSECONDS.toMillis(held), lease.threadName);
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    // Connection 하나를 빌려준 기록 - 같은 물리 Connection 이라도 빌려줄 때마다 새로 만든다
+    private final class Lease {
+
+        private final long acquiredNanos;
+        private final String threadName;
+        private final Throwable acquiredAt; // 샘플링 안 된 것은 null
+        private final AtomicInteger openStatements = new AtomicInteger();
+        private final AtomicBoolean reported = new AtomicBoolean();
+
+        Lease(long acquiredNanos, String threadName, Throwable acquiredAt) {
+            this.acquiredNanos = acquiredNanos;
+            this.threadName = threadName;
+            this.acquiredAt = acquiredAt;
+        }
+
+        /*
+         close 는 기록한 뒤에 감싼 Connection 으로 넘긴다 (Pool 이면 반납)
+         Statement 를 만드는 메서드는 Statement 도 감싸서 열려 있는 수를 센다
+         */
+        Connection wrap(Connection connection) {
+            boolean[] released = {false};
+
+            return (Connection) Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if ("close".equals(name)) {
+                            if (!released[0]) {
+                                released[0] = true;
+                                release(this);
+                            }
+                        } else if ("toString".equals(name)) {
+                            return "InstrumentedDataSource proxy wrapping " + connection;
+                        } else if ("hashCode".equals(name)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(name)) {
+                            return proxy == args[0];
+                        }
+
+                        Object result = invoke(connection, method, args);
+                        if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                            return wrapStatement((Statement) result, method.getReturnType(), (Connection) proxy);
+                        }
+                        return result;
+                    });
+        }
+
+        private Object wrapStatement(Statement statement, Class<?> type, Connection connectionProxy) {
+            openStatements.incrementAndGet();
+            boolean[] closed = {false};
+
+            return Proxy.newProxyInstance(InstrumentedDataSource.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        if ("close".equals(name) && !closed[0]) {
+                            closed[0] = true;
+                            openStatements.decrementAndGet();
+                        } else if ("getConnection".equals(name)) {
+                            return connectionProxy;
+                        } else if ("hashCode".equals(name)) {
+                            return System.identityHashCode(proxy);
+                        } else if ("equals".equals(name)) {
+                            return proxy == args[0];
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
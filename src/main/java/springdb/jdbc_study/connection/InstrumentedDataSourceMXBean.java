@@ -0,0 +1,40 @@
+package springdb.jdbc_study.connection;
+
+/*
+ InstrumentedDataSource 를 JConsole / VisualVM 에서 보기 위한 JMX 인터페이스
+ - 시간은 모두 micros
+ */
+public interface InstrumentedDataSourceMXBean {
+
+    long getAcquireCount();
+
+    long getAcquireP50Micros();
+
+    long getAcquireP99Micros();
+
+    long getAcquireMaxMicros();
+
+    long getHoldP50Micros();
+
+    long getHoldP99Micros();
+
+    long getHoldMaxMicros();
+
+    // 빌려줄 때 이미 빌려가 있던 Connection 수 (자기 포함) 분포
+    long getUsageP50();
+
+    long getUsageP99();
+
+    int getActiveConnections();
+
+    long getLeakCount();
+
+    // 반납할 때 아직 닫히지 않은 Statement 가 있던 횟수 (Connection 을 먼저 닫는 close 순서 등)
+    long getUnclosedStatementCount();
+
+    long getLeakThresholdMillis();
+
+    void setLeakThresholdMillis(long leakThresholdMillis);
+
+    void resetStatistics();
+}
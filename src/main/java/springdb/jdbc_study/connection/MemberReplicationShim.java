@@ -0,0 +1,75 @@
+package springdb.jdbc_study.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/*
+ 로컬에서 Replica 를 흉내내기 위한 복제 - H2 두 개 (Primary / Replica) 사이에 member 테이블을 주기적으로 통째로 복사한다
+ - 실제 복제처럼 interval 만큼 늦게 따라오므로, Replica 에서 읽으면 옛날 값을 볼 수 있다
+ - Replica 쪽은 한 트랜젝션으로 지우고 다시 넣으므로, 읽는 쪽은 복사 중간 상태를 보지 않는다
+ */
+@Slf4j
+public class MemberReplicationShim implements AutoCloseable {
+
+    private final JdbcTemplate primaryTemplate;
+    private final JdbcTemplate replicaTemplate;
+    private final TransactionTemplate replicaTxTemplate;
+    private final ScheduledExecutorService scheduler;
+
+    public MemberReplicationShim(DataSource primary, DataSource replica, Duration interval) {
+        this.primaryTemplate = new JdbcTemplate(primary);
+        this.replicaTemplate = new JdbcTemplate(replica);
+        this.replicaTxTemplate = new TransactionTemplate(new DataSourceTransactionManager(replica));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::replicateQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // @return 복사한 회원 수
+    public int replicateNow() {
+        List<Member> members = primaryTemplate.query("select member_id, money, version from member",
+                (rs, rowNum) -> new Member(rs.getString("member_id"), rs.getInt("money"), rs.getLong("version")));
+
+        replicaTxTemplate.executeWithoutResult(status -> {
+            replicaTemplate.update("delete from member");
+            replicaTemplate.batchUpdate("insert into member(member_id, money, version) values (?, ?, ?)",
+                    members.stream()
+                            .map(member -> new Object[]{member.getMemberId(), member.getMoney(), member.getVersion()})
+                            .collect(Collectors.toList()));
+        });
+        return members.size();
+    }
+
+    private void replicateQuietly() {
+        try {
+            replicateNow();
+        } catch (RuntimeException e) {
+            log.warn("member replication 실패 - 다음 주기에 다시 시도", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package springdb.jdbc_study.connection;
+
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/*
+ 읽기 전용 작업은 Replica, 나머지는 Primary 로 보내는 DataSource
+ - readOnly 트랜젝션 (TransactionSynchronizationManager.isCurrentTransactionReadOnly) 이거나
+   readOnly(...) 로 감싼 작업이면 Replica
+ - 반드시 lazyProxy() (LazyConnectionDataSourceProxy) 로 감싸서 써야 한다
+   > TxManager 는 readOnly 표시를 하기 전에 Connection 을 먼저 얻어오므로, 감싸지 않으면 항상 Primary 로 간다
+   > Proxy 는 실제 Connection 을 첫 SQL 실행 시점까지 미뤄준다
+ - Read-Your-Writes : 이 쓰레드가 Primary 에 쓴 뒤 readYourWritesWindow 동안은 읽기도 Primary 로 보낸다
+   > Replica 는 복제가 늦을 수 있으므로, 방금 쓴 값을 바로 다시 읽는 흐름이 옛날 값을 보지 않도록
+   > Duration.ZERO 면 끈다
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+    public enum Route {
+        PRIMARY, REPLICA
+    }
+
+    private final long readYourWritesWindowNanos;
+
+    private final ThreadLocal<Boolean> readOnlyScope = new ThreadLocal<>();
+    private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+
+    private final LongAdder primaryCount = new LongAdder();
+    private final LongAdder replicaCount = new LongAdder();
+
+    public ReadWriteRoutingDataSource(DataSource primary, DataSource replica, Duration readYourWritesWindow) {
+        this.readYourWritesWindowNanos = readYourWritesWindow.toNanos();
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    /*
+     기본 autoCommit / 격리수준을 직접 넣어준다
+     - 안 넣으면 Proxy 가 그 값을 알아내려고 만들자마자 Connection 을 하나 얻는데, 그게 Primary 쓰기로 기록된다
+     */
+    public DataSource lazyProxy() {
+        LazyConnectionDataSourceProxy proxy = new LazyConnectionDataSourceProxy();
+        proxy.setTargetDataSource(this);
+        proxy.setDefaultAutoCommit(true);
+        proxy.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED); // H2 기본값
+        proxy.afterPropertiesSet();
+        return proxy;
+    }
+
+    // 트랜젝션 밖에서 하는 조회를 Replica 로 보낼 때 - 안에서 얻는 Connection 이 모두 Replica 로 간다
+    public <T> T readOnly(Supplier<T> work) {
+        Boolean previous = readOnlyScope.get();
+        readOnlyScope.set(Boolean.TRUE);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                readOnlyScope.remove();
+            } else {
+                readOnlyScope.set(previous);
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return route();
+    }
+
+    public Route route() {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || Boolean.TRUE.equals(readOnlyScope.get());
+
+        if (readOnly && !isWithinReadYourWritesWindow()) {
+            replicaCount.increment();
+            return Route.REPLICA;
+        }
+        if (!readOnly) {
+            markWrite();
+        }
+        primaryCount.increment();
+        return Route.PRIMARY;
+    }
+
+    public long getPrimaryCount() {
+        return primaryCount.sum();
+    }
+
+    public long getReplicaCount() {
+        return replicaCount.sum();
+    }
+
+    /*
+     Primary Connection 을 얻은 시점에 한번, 트랜젝션이면 끝난 (commit) 시점에 한번 더 기록
+     - window 는 쓰기가 실제로 보이기 시작한 commit 시점부터 세어야 한다
+     */
+    private void markWrite() {
+        if (readYourWritesWindowNanos <= 0) {
+            return;
+        }
+        lastWriteNanos.set(System.nanoTime());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    lastWriteNanos.set(System.nanoTime());
+                }
+            });
+        }
+    }
+
+    private boolean isWithinReadYourWritesWindow() {
+        Long lastWrite = lastWriteNanos.get();
+        if (lastWrite == null) {
+            return false;
+        }
+        if (System.nanoTime() - lastWrite < readYourWritesWindowNanos) {
+            return true;
+        }
+        lastWriteNanos.remove();
+        return false;
+    }
+}
@@ -0,0 +1,396 @@
+package springdb.jdbc_study.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ DBConnectionUtil 처럼 매번 물리 Connection 을 맺지 않도록 만든 작은 Connection Pool
+ - HikariCP 의 ConcurrentBag 과 같은 모양 (lock 없이 CAS 로 빌린다)
+   > 1) 이 쓰레드가 마지막으로 반납한 Connection (ThreadLocal) 을 먼저 시도 - 같은 쓰레드는 대부분 여기서 끝난다
+   > 2) 전체 목록을 훑으면서 놀고 있는 것을 CAS 로 가져온다
+   > 3) maximumPoolSize 보다 적으면 새로 맺는다
+   > 4) 다 쓰고 있으면 반납하는 쪽이 SynchronousQueue 로 바로 넘겨줄 때까지 connectionTimeout 만큼 기다린다
+ - 빌려줄 때 한동안 안 쓰던 Connection 이면 isValid 로 확인하고, 죽었으면 버리고 다음 것을 본다
+ - idleTimeout 보다 오래 놀고 있는 Connection 은 housekeeper 가 닫는다 (Duration.ZERO 면 닫지 않는다)
+ - 빌려준 Connection 은 Proxy 라서 close 하면 반납된다
+   > 트랜젝션을 끝내지 않고 반납하면 rollback, autoCommit / readOnly / 격리수준은 처음 값으로 되돌린다
+ */
+@Slf4j
+public class SimpleConnectionPool extends AbstractDataSource implements AutoCloseable {
+
+    public static final Duration DEFAULT_CONNECTION_TIMEOUT = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(10);
+
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500); // 방금까지 쓰던 Connection 은 확인하지 않는다
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    private static final long HANDOFF_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10); // 넘겨받지 못해도 이 간격으로 목록을 다시 본다
+
+    private final String url;
+    private final String username;
+    private final String password;
+    private final int maximumPoolSize;
+    private final long connectionTimeoutNanos;
+    private final long idleTimeoutNanos;
+
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<PoolEntry> lastReturned = new ThreadLocal<>();
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>(true);
+    private final AtomicInteger totalConnections = new AtomicInteger(); // 맺는 중인 것까지 포함 - maximumPoolSize 를 넘지 않도록 먼저 자리를 잡는다
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final LongAdder threadLocalHitCount = new LongAdder();
+    private final LongAdder createdCount = new LongAdder();
+    private final LongAdder evictedCount = new LongAdder();
+
+    public SimpleConnectionPool(String url, String username, String password, int maximumPoolSize) {
+        this(url, username, password, maximumPoolSize, DEFAULT_CONNECTION_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public SimpleConnectionPool(String url, String username, String password, int maximumPoolSize,
+                                Duration connectionTimeout, Duration idleTimeout) {
+        if (maximumPoolSize <= 0) {
+            throw new IllegalArgumentException("maximumPoolSize must be positive = " + maximumPoolSize);
+        }
+        this.url = url;
+        this.username = username;
+        this.password = password;
+        this.maximumPoolSize = maximumPoolSize;
+        this.connectionTimeoutNanos = connectionTimeout.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+
+        if (idleTimeoutNanos > 0) {
+            long periodMillis = Math.min(Math.max(idleTimeout.toMillis() / 2, 100), 30_000);
+            this.housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "simple-pool-housekeeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            housekeeper.scheduleWithFixedDelay(this::evictIdle, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.housekeeper = null;
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        PoolEntry entry = borrow();
+        return entry.newProxy();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("pool connections always use the configured user");
+    }
+
+    // idleTimeout 보다 오래 놀고 있던 Connection 을 닫는다 - housekeeper 가 주기적으로 부른다
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (PoolEntry entry : entries) {
+            if (now - entry.lastReturnedNanos > idleTimeoutNanos && entry.state.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.REMOVED)) {
+                remove(entry);
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        if (housekeeper != null) {
+            housekeeper.shutdownNow();
+        }
+        for (PoolEntry entry : entries) {
+            if (entry.state.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.REMOVED)) {
+                remove(entry);
+            }
+        }
+        // 빌려가 있는 것은 반납할 때 닫힌다
+    }
+
+    public int getTotalConnections() {
+        return entries.size();
+    }
+
+    public int getIdleConnections() {
+        int idle = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.state.get() == PoolEntry.NOT_IN_USE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    public int getActiveConnections() {
+        return getTotalConnections() - getIdleConnections();
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public long getThreadLocalHitCount() {
+        return threadLocalHitCount.sum();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.sum();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.sum();
+    }
+
+    private PoolEntry borrow() throws SQLException {
+
+        if (closed) {
+            throw new SQLException("pool is closed");
+        }
+        long deadline = System.nanoTime() + connectionTimeoutNanos;
+
+        // 1) 이 쓰레드가 마지막으로 반납한 것
+        PoolEntry local = lastReturned.get();
+        if (local != null && local.state.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE)) {
+            if (isAlive(local)) {
+                threadLocalHitCount.increment();
+                return local;
+            }
+        }
+
+        while (true) {
+            if (closed) {
+                throw new SQLException("pool is closed");
+            }
+
+            // 2) 놀고 있는 것
+            for (PoolEntry entry : entries) {
+                if (entry.state.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE) && isAlive(entry)) {
+                    return entry;
+                }
+            }
+
+            // 3) 자리가 남았으면 새로
+            PoolEntry created = tryCreate();
+            if (created != null) {
+                return created;
+            }
+
+            // 4) 반납을 기다린다
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SQLTransientConnectionException("connection is not available, request timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis(connectionTimeoutNanos) + "ms (total = " + entries.size() + ", max = " + maximumPoolSize + ")");
+            }
+
+            waiters.incrementAndGet();
+            try {
+                PoolEntry handed = handoffQueue.poll(Math.min(remaining, HANDOFF_POLL_NANOS), TimeUnit.NANOSECONDS);
+                if (handed != null && handed.state.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE) && isAlive(handed)) {
+                    return handed;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for a connection", e);
+            } finally {
+                waiters.decrementAndGet();
+            }
+        }
+    }
+
+    // IN_USE 로 잡은 상태에서 확인한다 - 죽었으면 목록에서 빼고 false
+    private boolean isAlive(PoolEntry entry) {
+        if (System.nanoTime() - entry.lastReturnedNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            if (entry.connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return true;
+            }
+        } catch (SQLException e) {
+            log.warn("connection validation failed = {}", entry.connection, e);
+        }
+        entry.state.set(PoolEntry.REMOVED);
+        remove(entry);
+        return false;
+    }
+
+    private PoolEntry tryCreate() throws SQLException {
+        while (true) {
+            int total = totalConnections.get();
+            if (total >= maximumPoolSize) {
+                return null;
+            }
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                break;
+            }
+        }
+
+        Connection connection = null;
+        try {
+            connection = DriverManager.getConnection(url, username, password);
+            PoolEntry entry = new PoolEntry(connection); // 기본값을 읽다가 실패할 수 있다 - 그러면 맺은 Connection 도 닫는다
+            entries.add(entry);
+            createdCount.increment();
+            log.debug("pool connection created = {}, total = {}", connection, entries.size());
+            return entry;
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+            }
+            throw e;
+        }
+    }
+
+    // 기다리는 쓰레드가 있으면 바로 넘겨준다 (못 받아가도 상태가 NOT_IN_USE 라 목록을 훑는 쪽이 가져간다)
+    private void requite(PoolEntry entry, boolean broken) {
+        if (broken || closed) {
+            entry.state.set(PoolEntry.REMOVED);
+            remove(entry);
+            return;
+        }
+
+        entry.lastReturnedNanos = System.nanoTime();
+        entry.state.set(PoolEntry.NOT_IN_USE);
+        lastReturned.set(entry);
+
+        while (waiters.get() > 0 && entry.state.get() == PoolEntry.NOT_IN_USE) {
+            if (handoffQueue.offer(entry)) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void remove(PoolEntry entry) {
+        if (entries.remove(entry)) {
+            totalConnections.decrementAndGet();
+            evictedCount.increment();
+        }
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            log.warn("failed to close pool connection = {}", entry.connection, e);
+        }
+    }
+
+    private final class PoolEntry {
+
+        static final int NOT_IN_USE = 0;
+        static final int IN_USE = 1;
+        static final int REMOVED = -1;
+
+        private final Connection connection;
+        private final AtomicInteger state = new AtomicInteger(IN_USE); // 맺자마자 빌려준다
+        private final boolean defaultReadOnly;
+        private final int defaultIsolation;
+        private volatile long lastReturnedNanos = System.nanoTime();
+
+        PoolEntry(Connection connection) throws SQLException {
+            this.connection = connection;
+            connection.setAutoCommit(true);
+            this.defaultReadOnly = connection.isReadOnly();
+            this.defaultIsolation = connection.getTransactionIsolation();
+        }
+
+        /*
+         빌려줄 때마다 새 Proxy - 반납한 뒤에 옛날 Proxy 로 부르면 예외
+         - set 으로 시작하는 메서드가 불렸으면 반납할 때 기본값으로 되돌린다
+         - SQLState 08 (연결 오류) 이 한번이라도 나면 반납할 때 버린다
+         */
+        Connection newProxy() {
+            boolean[] closedProxy = {false};
+            boolean[] dirty = {false};
+            boolean[] broken = {false};
+
+            return (Connection) Proxy.newProxyInstance(SimpleConnectionPool.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        String name = method.getName();
+                        switch (name) {
+                            case "close":
+                                if (!closedProxy[0]) {
+                                    closedProxy[0] = true;
+                                    requite(this, broken[0] || !reset(dirty[0]));
+                                }
+                                return null;
+                            case "isClosed":
+                                return closedProxy[0] || connection.isClosed();
+                            case "toString":
+                                return "SimpleConnectionPool proxy wrapping " + connection;
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            default:
+                                break;
+                        }
+
+                        if (closedProxy[0]) {
+                            throw new SQLException("connection is closed (returned to pool)");
+                        }
+                        if (name.startsWith("set")) {
+                            dirty[0] = true;
+                        }
+
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            Throwable cause = e.getCause();
+                            if (cause instanceof SQLException) {
+                                String sqlState = ((SQLException) cause).getSQLState();
+                                if (sqlState != null && sqlState.startsWith("08")) {
+                                    broken[0] = true;
+                                }
+                            }
+                            throw cause;
+                        }
+                    });
+        }
+
+        // 끝나지 않은 트랜젝션은 rollback - 되돌리다 실패하면 다시 빌려주지 않는다
+        private boolean reset(boolean dirty) {
+            try {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                if (dirty) {
+                    if (connection.isReadOnly() != defaultReadOnly) {
+                        connection.setReadOnly(defaultReadOnly);
+                    }
+                    if (connection.getTransactionIsolation() != defaultIsolation) {
+                        connection.setTransactionIsolation(defaultIsolation);
+                    }
+                }
+                return true;
+            } catch (SQLException e) {
+                log.warn("failed to reset pool connection = {}", connection, e);
+                return false;
+            }
+        }
+    }
+}
@@ -7,6 +7,7 @@ public class Member {
 
     private String memberId;
     private int money;
+    private long version; // 낙관적 락 - update 할 때마다 1씩 올라간다
 
     public Member() {
     }
@@ -15,4 +16,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
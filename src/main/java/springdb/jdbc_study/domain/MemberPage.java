@@ -0,0 +1,25 @@
+package springdb.jdbc_study.domain;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/*
+ member_id 순으로 자른 한 페이지 (Keyset 페이징)
+ - OFFSET 대신 마지막으로 본 member_id 다음부터 읽으므로, 페이지가 깊어져도 느려지지 않는다
+ */
+@Getter
+public class MemberPage {
+
+    private final List<Member> members;
+    private final String nextCursor; // 다음 페이지 조회시 lastMemberId 로 넘길 값 - 마지막 페이지면 null
+
+    public MemberPage(List<Member> members, String nextCursor) {
+        this.members = members;
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,559 @@
+package springdb.jdbc_study.engine;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.support.LatencyHistogram;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/*
+ 잔액을 메모리에 들고 이체하는 엔진 - 이체 중에는 DB row lock 을 잡지 않는다
+ - 회원은 memberId 로 파티션에 나뉘고, 파티션마다 쓰레드 하나가 자기 회원의 잔액을 혼자 바꾼다 (Single Writer - lock 없음)
+ - 이체는 출금 회원의 파티션이 처리한다
+   > 잔액 확인 -> 출금 -> 자기 WAL 에 기록 -> (모아서) WAL force -> 호출자에게 완료 알림
+   > 입금 회원이 다른 파티션이면 WAL 에 남긴 다음에 입금 메시지를 보낸다 - 입금은 그 파티션 쓰레드가 반영
+ - 체크포인트 : 파티션마다 바뀐 잔액을 MemberRepository.update 로 member 테이블에 쓰고,
+   어느 파티션의 몇번 record 까지 반영했는지 (appliedSeq) 를 engine_checkpoint 에 같은 트랜젝션으로 남긴다
+   > forceOnCommit 과 상관없이 자기 WAL 을 먼저 force 한다 - 디스크에 없는 출금이 체크포인트에 남으면 안 된다
+   > 입금은 보낸 파티션의 WAL 이 force 된 것 (durableSeq 이하) 만 남긴다 - 나머지는 빼고 쓰고 다음 체크포인트로 미룬다
+ - WAL 에 append 된 이체는 성공한 이체다 (재시작하면 WAL 에서 다시 반영되므로)
+   > append 자체가 실패하면 잔액을 바꾸기 전이므로 그 이체만 실패
+   > force 가 실패하면 실패로 알리지 않고, 완료 알림 / 입금을 들고 있다가 다음 force 가 성공하면 보낸다
+ - 재시작 : member 테이블 (체크포인트) 을 읽고, 모든 WAL 에서 appliedSeq 이후의 record 만 다시 반영한다
+   > 출금은 출금 파티션의 appliedSeq, 입금은 입금 파티션이 그 WAL 에 대해 남긴 appliedSeq 로 판단 - 두번 반영되거나 빠지지 않는다
+ - 엔진이 떠 있는 동안 회원은 엔진으로만 바꿔야 한다. 시작 후에 추가된 회원, 파티션 수 변경은 지원하지 않는다
+ - WAL 은 계속 커진다 (체크포인트 후 잘라내기는 하지 않음)
+ */
+@Slf4j
+public class TransferEngine implements AutoCloseable {
+
+    private static final int MAX_COMMANDS_PER_BATCH = 256;
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final MemberRepository memberRepository;
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+    private final boolean forceOnCommit;
+    private final Partition[] partitions;
+    private final Set<String> memberIds = new HashSet<>(); // 시작할 때 한번 채우고 읽기만 한다
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private volatile boolean running = true;
+
+    /*
+     @param forceOnCommit true 면 WAL 을 디스크까지 내린 다음에 완료를 알린다 (false 면 OS 페이지 캐시까지 - 프로세스가 죽어도 남지만 전원이 나가면 잃을 수 있다)
+     */
+    public TransferEngine(MemberRepository memberRepository, DataSource dataSource, Path walDirectory,
+                          int partitionCount, boolean forceOnCommit) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("partitionCount must be positive = " + partitionCount);
+        }
+        this.memberRepository = memberRepository;
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.forceOnCommit = forceOnCommit;
+        this.partitions = new Partition[partitionCount];
+        for (int id = 0; id < partitionCount; id++) {
+            partitions[id] = new Partition(id, partitionCount);
+        }
+
+        recover(walDirectory);
+
+        for (Partition partition : partitions) {
+            partition.thread.start();
+        }
+    }
+
+    public CompletableFuture<Void> transfer(String fromId, String toId, int money) {
+        if (money <= 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("money must be positive = " + money));
+        }
+        TransferCommand command = new TransferCommand(fromId, toId, money);
+        submit(partitionOf(fromId), command, command.future);
+        return command.future;
+    }
+
+    // 그 회원 파티션 쓰레드가 읽어서 돌려준다 (앞서 들어온 이체까지 반영된 값)
+    public CompletableFuture<Integer> balanceOf(String memberId) {
+        BalanceQuery query = new BalanceQuery(memberId);
+        submit(partitionOf(memberId), query, query.future);
+        return query.future;
+    }
+
+    /*
+     모든 파티션의 체크포인트가 끝날 때까지 기다린다
+     - 먼저 모든 파티션의 WAL 을 force 해둔다 - 그 전에 보낸 입금은 받는 쪽 큐에서 체크포인트 명령보다 앞에 있으므로
+       forceOnCommit = false 여도 이번 체크포인트에 모두 들어간다
+     */
+    public void checkpoint() {
+        List<CompletableFuture<Void>> syncs = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            SyncCommand command = new SyncCommand();
+            submit(partition, command, command.future);
+            syncs.add(command.future);
+        }
+        CompletableFuture.allOf(syncs.toArray(new CompletableFuture[0])).join();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(partitions.length);
+        for (Partition partition : partitions) {
+            CheckpointCommand command = new CheckpointCommand();
+            submit(partition, command, command.future);
+            futures.add(command.future);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    // 이체 요청부터 완료 알림까지 (WAL 기록 포함)
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    // 받은 요청을 모두 처리하고 멈춘다 - 체크포인트는 하지 않는다 (필요하면 먼저 checkpoint 호출)
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return; // 이미 닫혔다
+        }
+        running = false;
+        for (Partition partition : partitions) {
+            try {
+                partition.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            IllegalStateException closed = new IllegalStateException("TransferEngine is closed");
+            List<Command> leftovers = new ArrayList<>();
+            partition.queue.drainTo(leftovers);
+            leftovers.forEach(command -> command.fail(closed));
+            partition.closeWal();
+        }
+    }
+
+    /*
+     running 을 본 뒤에 close 가 큐를 비웠을 수 있으므로, 넣은 다음에 한번 더 본다
+     - 닫혔는데 아직 큐에 남아 있으면 직접 꺼내서 실패시킨다 (꺼내지 못했으면 파티션 쓰레드나 close 가 가져가서 처리한다)
+     */
+    private void submit(Partition partition, Command command, CompletableFuture<?> future) {
+        if (!running) {
+            future.completeExceptionally(new IllegalStateException("TransferEngine is closed"));
+            return;
+        }
+        partition.queue.add(command);
+        if (!running && partition.queue.remove(command)) {
+            future.completeExceptionally(new IllegalStateException("TransferEngine is closed"));
+        }
+    }
+
+    private Partition partitionOf(String memberId) {
+        return partitions[Math.floorMod(memberId.hashCode(), partitions.length)];
+    }
+
+    /*
+     1) member 테이블 (마지막 체크포인트의 잔액) 을 파티션으로 나눠 싣는다
+     2) engine_checkpoint 에서 파티션별 appliedSeq 를 읽는다
+     3) 파티션 WAL 을 열면서 record 마다 아직 반영 안 된 출금 / 입금만 다시 반영한다
+     */
+    private void recover(Path walDirectory) {
+
+        try (Stream<Member> members = memberRepository.findAll(1000)) {
+            members.forEach(member -> {
+                memberIds.add(member.getMemberId());
+                partitionOf(member.getMemberId()).balances.put(member.getMemberId(), member.getMoney());
+            });
+        }
+
+        template.query("select partition_id, source_partition, applied_seq from engine_checkpoint", rs -> {
+            int partitionId = rs.getInt("partition_id");
+            int source = rs.getInt("source_partition");
+            if (partitionId >= partitions.length || source >= partitions.length) {
+                throw new IllegalStateException("checkpoint 의 파티션 수가 다르다 partition = " + partitionId + ", source = " + source);
+            }
+            partitions[partitionId].appliedSeq[source] = rs.getLong("applied_seq");
+        });
+
+        int replayed = 0;
+        for (Partition source : partitions) {
+            List<TransferWal.WalRecord> records = new ArrayList<>();
+            source.wal = TransferWal.open(walDirectory.resolve("transfer-" + source.id + ".wal"),
+                    TransferWal.DEFAULT_SEGMENT_BYTES, records::add);
+            source.wal.force(); // 페이지 캐시에만 있던 꼬리도 디스크로 - 되살린 record 는 모두 durable
+
+            for (TransferWal.WalRecord record : records) {
+                source.lastSeq = Math.max(source.lastSeq, record.seq);
+
+                if (record.seq > source.appliedSeq[source.id]) {
+                    source.balances.merge(record.fromId, -record.money, Integer::sum);
+                    source.dirty.add(record.fromId);
+                }
+                Partition target = partitionOf(record.toId);
+                if (record.seq > target.appliedSeq[source.id]) {
+                    target.balances.merge(record.toId, record.money, Integer::sum);
+                    target.dirty.add(record.toId);
+                }
+                replayed++;
+            }
+        }
+
+        // WAL 로 되살린 상태까지 반영한 것으로 본다 (다음 체크포인트 때 같이 저장)
+        for (Partition partition : partitions) {
+            partition.durableSeq = partition.lastSeq;
+            for (Partition source : partitions) {
+                partition.appliedSeq[source.id] = source.lastSeq;
+            }
+        }
+        log.info("TransferEngine recovered members = {}, wal records = {}", memberIds.size(), replayed);
+    }
+
+    private class Partition {
+
+        private final int id;
+        private final Map<String, Integer> balances = new HashMap<>();
+        private final Set<String> dirty = new HashSet<>(); // 마지막 체크포인트 이후 바뀐 회원
+        private final long[] appliedSeq;                   // [source 파티션] 의 몇번 record 까지 이 파티션에 반영했는지
+        private final BlockingQueue<Command> queue = new LinkedBlockingQueue<>();
+        private final Thread thread;
+
+        private TransferWal wal;
+        private long lastSeq;
+        private volatile long durableSeq; // 이 WAL 에서 force 까지 끝난 마지막 seq - 다른 파티션이 체크포인트할 때 읽는다
+        private final List<CreditCommand> undurableCredits = new ArrayList<>(); // 보낸 쪽 WAL 이 아직 force 안 된 입금
+
+        // 한 batch 동안 모아두었다가 WAL force 이후에 처리
+        private final List<TransferCommand> pendingAcks = new ArrayList<>();
+        private final List<CreditCommand> pendingCredits = new ArrayList<>();
+        private final List<Runnable> pendingReplies = new ArrayList<>(); // 조회 응답 - WAL 에 남은 상태만 보여준다
+        private final List<CheckpointCommand> pendingCheckpoints = new ArrayList<>();
+        private final List<SyncCommand> pendingSyncs = new ArrayList<>();
+
+        Partition(int id, int partitionCount) {
+            this.id = id;
+            this.appliedSeq = new long[partitionCount];
+            this.thread = new Thread(this::run, "transfer-engine-" + id);
+            this.thread.setDaemon(true);
+        }
+
+        private void run() {
+            List<Command> batch = new ArrayList<>(MAX_COMMANDS_PER_BATCH);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Command first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        if (!pendingAcks.isEmpty()) {
+                            commitBatch(); // 지난번 force 가 실패해서 들고 있는 것 - 다시 시도
+                        }
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_COMMANDS_PER_BATCH - 1);
+
+                    for (Command command : batch) {
+                        command.applyTo(this);
+                    }
+                    commitBatch();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RuntimeException e) {
+                    log.error("transfer engine partition {} 처리 실패", id, e);
+                    failPending(e);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        /*
+         WAL 을 먼저 내리고 나서 (forceOnCommit)
+         - 다른 파티션에 입금을 보낸다 (WAL 에 남지 않은 이체의 입금이 먼저 반영되면 안 된다)
+         - 호출자에게 완료를 알린다 - 입금을 먼저 보냈으므로 완료 후의 잔액 조회에는 입금이 보인다
+         - 체크포인트도 WAL 에 남은 상태만 저장해야 하므로 맨 마지막에 한다
+         */
+        private void commitBatch() {
+            if ((!pendingAcks.isEmpty() && forceOnCommit) || !pendingSyncs.isEmpty()) {
+                force(); // 실패하면 아래는 하나도 하지 않는다 - 들고 있다가 다음에 다시
+            }
+            pendingSyncs.forEach(command -> command.future.complete(null));
+            pendingSyncs.clear();
+
+            sendCredits();
+
+            long now = System.nanoTime();
+            for (TransferCommand command : pendingAcks) {
+                latency.record(now - command.submittedAt);
+                command.future.complete(null);
+            }
+            pendingAcks.clear();
+
+            pendingReplies.forEach(Runnable::run);
+            pendingReplies.clear();
+
+            for (CheckpointCommand command : pendingCheckpoints) {
+                try {
+                    writeCheckpoint();
+                    command.future.complete(null);
+                } catch (RuntimeException e) {
+                    command.future.completeExceptionally(e); // dirty 는 그대로 두고 다음 체크포인트에 다시 쓴다
+                }
+            }
+            pendingCheckpoints.clear();
+        }
+
+        private void sendCredits() {
+            for (CreditCommand credit : pendingCredits) {
+                partitionOf(credit.memberId).queue.add(credit);
+            }
+            pendingCredits.clear();
+        }
+
+        private void transfer(TransferCommand command) {
+            Integer fromBalance = balances.get(command.fromId);
+            if (fromBalance == null || !memberIds.contains(command.toId)) {
+                command.future.completeExceptionally(new NoSuchElementException(
+                        "member not found " + command.fromId + " -> " + command.toId));
+                return;
+            }
+            if (fromBalance < command.money) {
+                command.future.completeExceptionally(new IllegalStateException("잔액 부족 memberId = " + command.fromId));
+                return;
+            }
+
+            long seq = lastSeq + 1;
+            try {
+                wal.append(seq, command.fromId, command.toId, command.money);
+            } catch (RuntimeException e) {
+                command.future.completeExceptionally(e); // 잔액을 바꾸기 전 - 이 이체만 없던 일
+                return;
+            }
+            lastSeq = seq;
+
+            balances.put(command.fromId, fromBalance - command.money);
+            dirty.add(command.fromId);
+            appliedSeq[id] = seq;
+
+            Partition target = partitionOf(command.toId);
+            if (target == this) {
+                balances.merge(command.toId, command.money, Integer::sum);
+                dirty.add(command.toId);
+            } else {
+                pendingCredits.add(new CreditCommand(id, seq, command.toId, command.money));
+            }
+            pendingAcks.add(command);
+        }
+
+        private void credit(CreditCommand credit) {
+            balances.merge(credit.memberId, credit.money, Integer::sum);
+            dirty.add(credit.memberId);
+            appliedSeq[credit.sourcePartition] = credit.seq; // source 파티션 하나가 seq 순서대로 보낸다
+            if (credit.seq > partitions[credit.sourcePartition].durableSeq) {
+                undurableCredits.add(credit);
+            }
+        }
+
+        private void force() {
+            wal.force();
+            durableSeq = lastSeq;
+        }
+
+        /*
+         이 파티션 쓰레드에서만 호출 - 체크포인트 중에는 이 파티션만 잠시 멈춘다
+         - 자기 WAL 은 먼저 force (출금 / 자기 파티션 안의 입금은 모두 durable)
+         - 보낸 쪽 WAL 이 아직 force 안 된 입금은 잔액에서 빼고 쓰고, appliedSeq 도 그 앞까지만 남긴다 (회원은 dirty 로 남긴다)
+         */
+        private void writeCheckpoint() {
+            force();
+
+            undurableCredits.removeIf(credit -> credit.seq <= partitions[credit.sourcePartition].durableSeq);
+            Map<String, Integer> undurableMoney = new HashMap<>();
+            long[] applied = appliedSeq.clone();
+            for (CreditCommand credit : undurableCredits) {
+                undurableMoney.merge(credit.memberId, credit.money, Integer::sum);
+                applied[credit.sourcePartition] = Math.min(applied[credit.sourcePartition], credit.seq - 1);
+            }
+
+            Map<String, Integer> changed = new HashMap<>();
+            dirty.forEach(memberId -> changed.put(memberId, balances.get(memberId) - undurableMoney.getOrDefault(memberId, 0)));
+
+            txTemplate.executeWithoutResult(status -> {
+                changed.forEach(memberRepository::update);
+                List<Object[]> rows = new ArrayList<>(applied.length);
+                for (int source = 0; source < applied.length; source++) {
+                    rows.add(new Object[]{id, source, applied[source]});
+                }
+                template.batchUpdate("merge into engine_checkpoint key(partition_id, source_partition) values (?, ?, ?)", rows);
+            });
+            dirty.removeAll(changed.keySet());
+            dirty.addAll(undurableMoney.keySet());
+        }
+
+        /*
+         batch 처리 중 실패 (WAL force 등)
+         - WAL 에 append 된 이체는 성공한 이체 - 완료 알림 / 입금 / 조회 응답은 들고 있다가 다음 force 가 성공하면 보낸다
+         - force 를 기다리는 sync / 체크포인트 요청만 실패로 알린다 (잔액을 바꾸지 않는 요청)
+         */
+        private void failPending(RuntimeException e) {
+            pendingSyncs.forEach(command -> command.future.completeExceptionally(e));
+            pendingSyncs.clear();
+            pendingCheckpoints.forEach(command -> command.future.completeExceptionally(e));
+            pendingCheckpoints.clear();
+        }
+
+        /*
+         close 에서 쓰레드가 멈춘 뒤 - 아직 들고 있는 완료 알림이 있으면 마지막으로 force 해보고 알린다
+         - 그래도 실패하면 durable 한지 알 수 없다고 알린다 (WAL 에는 있으므로 디스크에 남았다면 재시작할 때 반영된다)
+         - 입금은 보내지 않는다 - 재시작할 때 WAL 에서 반영
+         */
+        private void closeWal() {
+            if (!pendingAcks.isEmpty()) {
+                try {
+                    force();
+                    pendingAcks.forEach(command -> command.future.complete(null));
+                } catch (RuntimeException e) {
+                    IllegalStateException unknown = new IllegalStateException(
+                            "WAL force failed on close - the transfer is in the WAL and is applied on restart if it reached disk", e);
+                    pendingAcks.forEach(command -> command.future.completeExceptionally(unknown));
+                }
+                pendingAcks.clear();
+            }
+            pendingReplies.forEach(Runnable::run);
+            pendingReplies.clear();
+            pendingCredits.clear();
+            wal.close();
+        }
+    }
+
+    private abstract static class Command {
+        abstract void applyTo(Partition partition);
+
+        abstract void fail(RuntimeException e);
+    }
+
+    private static class TransferCommand extends Command {
+
+        private final String fromId;
+        private final String toId;
+        private final int money;
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        TransferCommand(String fromId, String toId, int money) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+        }
+
+        @Override
+        void applyTo(Partition partition) {
+            partition.transfer(this);
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static class CreditCommand extends Command {
+
+        private final int sourcePartition;
+        private final long seq;
+        private final String memberId;
+        private final int money;
+
+        CreditCommand(int sourcePartition, long seq, String memberId, int money) {
+            this.sourcePartition = sourcePartition;
+            this.seq = seq;
+            this.memberId = memberId;
+            this.money = money;
+        }
+
+        @Override
+        void applyTo(Partition partition) {
+            partition.credit(this);
+        }
+
+        // WAL 에 남았으므로 재시작하면 다시 반영된다
+        @Override
+        void fail(RuntimeException e) {
+            log.warn("입금 반영 전에 종료 - 재시작시 WAL 에서 반영 memberId = {}, seq = {}", memberId, seq);
+        }
+    }
+
+    private static class BalanceQuery extends Command {
+
+        private final String memberId;
+        private final CompletableFuture<Integer> future = new CompletableFuture<>();
+
+        BalanceQuery(String memberId) {
+            this.memberId = memberId;
+        }
+
+        @Override
+        void applyTo(Partition partition) {
+            Integer balance = partition.balances.get(memberId);
+            partition.pendingReplies.add(() -> {
+                if (balance == null) {
+                    future.completeExceptionally(new NoSuchElementException("member not found memberId = " + memberId));
+                } else {
+                    future.complete(balance);
+                }
+            });
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    // WAL force 만 - checkpoint 가 먼저 모든 파티션에 보낸다
+    private static class SyncCommand extends Command {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        @Override
+        void applyTo(Partition partition) {
+            partition.pendingSyncs.add(this);
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static class CheckpointCommand extends Command {
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        @Override
+        void applyTo(Partition partition) {
+            partition.pendingCheckpoints.add(this);
+        }
+
+        @Override
+        void fail(RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package springdb.jdbc_study.engine;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/*
+ 파티션 하나의 이체 기록 (Write-Ahead Log) - 메모리 맵 파일에 덧붙이기만 한다
+ - record = [int payload 길이][int CRC32][payload : long seq, int money, from, to]
+ - 파일 끝은 0 으로 채워져 있으므로 길이가 0 이면 로그의 끝
+ - 복구할 때 CRC 가 안 맞는 record (쓰다가 죽은 꼬리) 를 만나면 거기까지만 유효한 것으로 보고, 그 자리부터 다시 쓴다
+ - 파티션 쓰레드 하나만 쓰므로 동기화하지 않는다
+ */
+@Slf4j
+class TransferWal implements AutoCloseable {
+
+    static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private static final int HEADER_BYTES = Integer.BYTES * 2;
+    private static final int MAX_PAYLOAD_BYTES = 1024;
+
+    private final Path path;
+    private final int segmentBytes;
+    private final FileChannel channel;
+
+    private MappedByteBuffer segment; // 지금 쓰고 있는 구간
+    private long segmentStart;        // segment 가 파일의 어디서부터인지
+
+    private TransferWal(Path path, int segmentBytes, FileChannel channel, long writePosition) throws IOException {
+        this.path = path;
+        this.segmentBytes = segmentBytes;
+        this.channel = channel;
+        map(writePosition);
+    }
+
+    /*
+     로그를 처음부터 읽어서 유효한 record 를 recordConsumer 에 넘기고, 유효한 끝 위치부터 이어서 쓰도록 연다
+     */
+    static TransferWal open(Path path, int segmentBytes, Consumer<WalRecord> recordConsumer) {
+        try {
+            long validEnd = Files.exists(path) ? replay(path, recordConsumer) : 0;
+            FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.truncate(validEnd); // 손상된 꼬리 뒤에 남은 옛 record 가 나중에 다시 읽히지 않도록 잘라낸다
+            return new TransferWal(path, segmentBytes, channel, validEnd);
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL open 실패 path = " + path, e);
+        }
+    }
+
+    void append(long seq, String fromId, String toId, int money) {
+        byte[] from = fromId.getBytes(StandardCharsets.UTF_8);
+        byte[] to = toId.getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = Long.BYTES + Integer.BYTES + Short.BYTES + from.length + Short.BYTES + to.length;
+        if (payloadBytes > MAX_PAYLOAD_BYTES) {
+            throw new IllegalArgumentException("memberId too long " + fromId + " -> " + toId);
+        }
+
+        if (segment.remaining() < HEADER_BYTES + payloadBytes + HEADER_BYTES) { // 끝 표시 (길이 0) 자리까지 남겨둔다
+            try {
+                map(segmentStart + segment.position());
+            } catch (IOException e) {
+                throw new UncheckedIOException("WAL remap 실패 path = " + path, e);
+            }
+        }
+
+        int start = segment.position();
+        segment.position(start + HEADER_BYTES);
+        segment.putLong(seq);
+        segment.putInt(money);
+        segment.putShort((short) from.length);
+        segment.put(from);
+        segment.putShort((short) to.length);
+        segment.put(to);
+
+        CRC32 crc = new CRC32();
+        crc.update(segment.duplicate().position(start + HEADER_BYTES).limit(start + HEADER_BYTES + payloadBytes));
+        segment.putInt(start, payloadBytes);
+        segment.putInt(start + Integer.BYTES, (int) crc.getValue());
+    }
+
+    // 메모리 맵에 쓴 것은 OS 페이지 캐시까지 - 전원이 나가도 남기려면 디스크로 내린다
+    void force() {
+        segment.force();
+    }
+
+    @Override
+    public void close() {
+        try {
+            segment.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("WAL close 실패 path = " + path, e);
+        }
+    }
+
+    private void map(long position) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes); // 모자라면 파일이 늘어난다
+        segmentStart = position;
+    }
+
+    // @return 마지막 유효 record 의 끝 위치
+    private static long replay(Path path, Consumer<WalRecord> recordConsumer) throws IOException {
+        long position = 0;
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            while (true) {
+                int payloadBytes = in.readInt();
+                int checksum = in.readInt();
+                if (payloadBytes <= 0 || payloadBytes > MAX_PAYLOAD_BYTES) {
+                    return position; // 로그의 끝
+                }
+
+                byte[] payload = new byte[payloadBytes];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("WAL 꼬리 손상 - 여기서부터 버린다 path = {}, position = {}", path, position);
+                    return position;
+                }
+
+                recordConsumer.accept(WalRecord.decode(payload));
+                position += HEADER_BYTES + payloadBytes;
+            }
+        } catch (EOFException e) {
+            return position;
+        }
+    }
+
+    static class WalRecord {
+
+        final long seq;
+        final int money;
+        final String fromId;
+        final String toId;
+
+        WalRecord(long seq, int money, String fromId, String toId) {
+            this.seq = seq;
+            this.money = money;
+            this.fromId = fromId;
+            this.toId = toId;
+        }
+
+        static WalRecord decode(byte[] payload) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            long seq = in.readLong();
+            int money = in.readInt();
+            byte[] from = new byte[in.readShort()];
+            in.readFully(from);
+            byte[] to = new byte[in.readShort()];
+            in.readFully(to);
+            return new WalRecord(seq, money, new String(from, StandardCharsets.UTF_8), new String(to, StandardCharsets.UTF_8));
+        }
+    }
+}
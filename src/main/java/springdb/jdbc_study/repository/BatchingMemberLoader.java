@@ -0,0 +1,129 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.support.MicroBatcher;
+
+import java.time.Duration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ DataLoader 방식 findById - 여러 쓰레드의 서로 다른 회원 조회를 잠깐 모아서 findAllById 한번으로 읽는다
+ - load 는 큐에 넣기만 하고 (MicroBatcher), 로더 쓰레드가 maxBatchSize 개가 모이거나 maxDelay 가 지나면 한번에 조회한다
+ - 같은 회원이 여러번 들어오면 한번만 조회하고 나눠준다 (Member 는 setter 가 있으므로 각자 복사본)
+ - 없는 회원은 그 호출만 기존과 같이 NoSuchElementException
+ - 조회는 로더 쓰레드의 Connection 으로 하므로, 트랜젝션 안의 findById 는 모으지 않고 바로 위임한다
+ - 대신 모으는 시간 (최대 maxDelay) 만큼 응답이 늦어진다 - 처리량과 지연을 맞바꾸는 것
+ */
+@Slf4j
+public class BatchingMemberLoader implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(1);
+
+    private final MemberRepository memberRepository;
+    private final MicroBatcher<PendingLoad> batcher;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder loadCount = new LongAdder();
+
+    public BatchingMemberLoader(MemberRepository memberRepository) {
+        this(memberRepository, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    public BatchingMemberLoader(MemberRepository memberRepository, int maxBatchSize, Duration maxDelay) {
+        this.memberRepository = memberRepository;
+        this.batcher = new MicroBatcher<>("BatchingMemberLoader", "member-batch-loader", maxBatchSize, maxDelay,
+                this::dispatch, (load, e) -> load.future.completeExceptionally(e));
+    }
+
+    public CompletableFuture<Member> load(String memberId) {
+        PendingLoad load = new PendingLoad(memberId);
+        batcher.submit(load);
+        return load.future;
+    }
+
+    // MemberRepository.findById 와 같은 모양으로 기다려서 받는다
+    public Member findById(String memberId) {
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return memberRepository.findById(memberId);
+        }
+
+        try {
+            return load(memberId).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    // 이미 받은 조회는 모두 처리하고 종료한다
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getLoadCount() {
+        return loadCount.sum();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = getBatchCount();
+        return batches == 0 ? 0.0 : (double) getLoadCount() / batches;
+    }
+
+    private void dispatch(List<PendingLoad> batch) {
+
+        Set<String> memberIds = new LinkedHashSet<>(batch.size());
+        batch.forEach(load -> memberIds.add(load.memberId));
+
+        Map<String, Member> found;
+        try {
+            found = memberRepository.findAllById(memberIds).stream()
+                    .collect(Collectors.toMap(Member::getMemberId, Function.identity()));
+        } catch (RuntimeException e) {
+            log.warn("batch load 실패 - batch size = {}", batch.size(), e);
+            batch.forEach(load -> load.future.completeExceptionally(e));
+            return;
+        }
+
+        batchCount.increment();
+        loadCount.add(batch.size());
+        for (PendingLoad load : batch) {
+            Member member = found.get(load.memberId);
+            if (member == null) {
+                load.future.completeExceptionally(new NoSuchElementException("member not found memberId = " + load.memberId));
+            } else {
+                load.future.complete(new Member(member.getMemberId(), member.getMoney(), member.getVersion()));
+            }
+        }
+    }
+
+    private static class PendingLoad {
+
+        private final String memberId;
+        private final CompletableFuture<Member> future = new CompletableFuture<>();
+
+        PendingLoad(String memberId) {
+            this.memberId = memberId;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.support.MemberIdBloomFilter;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ 없는 회원 ID 조회 (오타 / 스캔 / 재시도) 를 DB 에 보내지 않는 데코레이터
+ - 시작할 때 member 테이블 전체 ID 로 Bloom Filter 를 만들고, save / saveAll 때마다 추가한다
+ - Filter 가 "확실히 없음" 이면 조회하지 않는다 - findById 는 NoSuchElementException, findOptionalById 는 Optional.empty()
+ - 추가는 DB 저장보다 먼저 한다 - 저장이 실패해도 비트가 하나 남을 뿐이고 (오탐), 저장된 회원이 안 보이는 순간은 없다
+ - Bloom Filter 는 지울 수 없으므로 delete 한 ID 는 계속 DB 로 간다 - 쌓이면 rebuild() 로 다시 만든다
+ - rebuild 전에 시작해서 스캔 뒤에 commit 되는 save 를 놓치지 않도록, 진행 중인 save 의 ID 는 새 Filter 에 직접 넣는다
+ - 이 Repository 를 거치지 않고 DB 에 들어온 회원은 rebuild 전까지 "없음" 으로 보인다 - 쓰기는 모두 이 Repository 로
+ */
+@Slf4j
+public class BloomFilterMemberRepository extends ForwardingMemberRepository {
+
+    private static final int REBUILD_FETCH_SIZE = 1000;
+
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+
+    private volatile MemberIdBloomFilter filter;
+    private volatile MemberIdBloomFilter rebuilding; // rebuild 도중 들어온 save 도 새 Filter 에 넣기 위해
+    private final Map<Object, Collection<String>> savesInFlight = new ConcurrentHashMap<>(); // commit 전인 save
+
+    private final LongAdder rejectedCount = new LongAdder();       // Filter 가 막은 조회
+    private final LongAdder falsePositiveCount = new LongAdder();  // Filter 를 통과했는데 없던 조회
+    private final LongAdder deletedSinceRebuild = new LongAdder();
+
+    public BloomFilterMemberRepository(MemberRepository delegate, long expectedInsertions, double falsePositiveRate) {
+        super(delegate);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        rebuild();
+    }
+
+    /*
+     member 테이블을 다시 읽어서 Filter 를 새로 만든다 (지운 ID 정리)
+     - 다 만들 때까지는 기존 Filter 로 답한다
+     - rebuilding 을 건 뒤에 시작한 save 는 스스로 새 Filter 에도 넣는다
+     - 그 전에 시작해서 아직 commit 전인 save 는 스캔에 안 보일 수 있으므로 여기서 직접 넣는다
+     */
+    public synchronized void rebuild() {
+        MemberIdBloomFilter newFilter = new MemberIdBloomFilter(expectedInsertions, falsePositiveRate);
+        rebuilding = newFilter;
+        savesInFlight.values().forEach(memberIds -> memberIds.forEach(newFilter::put));
+
+        LongAdder count = new LongAdder();
+        try (Stream<Member> members = delegate.findAll(REBUILD_FETCH_SIZE)) {
+            members.forEach(member -> {
+                newFilter.put(member.getMemberId());
+                count.increment();
+            });
+        }
+        filter = newFilter;
+        rebuilding = null;
+        deletedSinceRebuild.reset();
+        log.info("member bloom filter built - members = {}, bits = {}, hashes = {}", count.sum(), newFilter.getBitSize(), newFilter.getHashCount());
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        if (!filter.mightContain(memberId)) {
+            rejectedCount.increment();
+            throw new NoSuchElementException("member not found memberId = " + memberId);
+        }
+        try {
+            return delegate.findById(memberId);
+        } catch (NoSuchElementException e) {
+            falsePositiveCount.increment();
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        if (!filter.mightContain(memberId)) {
+            rejectedCount.increment();
+            return Optional.empty();
+        }
+        Optional<Member> member = delegate.findOptionalById(memberId);
+        if (member.isEmpty()) {
+            falsePositiveCount.increment();
+        }
+        return member;
+    }
+
+    @Override
+    public Member save(Member member) {
+        Object ticket = beginSave(List.of(member.getMemberId()));
+        try {
+            return delegate.save(member);
+        } finally {
+            endSaveAfterCompletion(ticket);
+        }
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        List<String> memberIds = members.stream().map(Member::getMemberId).collect(Collectors.toList());
+        Object ticket = beginSave(memberIds);
+        try {
+            delegate.saveAll(members);
+        } finally {
+            endSaveAfterCompletion(ticket);
+        }
+    }
+
+    // 새 회원이 생길 수 있으므로 save 와 같이 먼저 filter 에 넣는다 (이미 있던 회원이면 그대로)
+    @Override
+    public Member upsert(Member member) {
+        Object ticket = beginSave(List.of(member.getMemberId()));
+        try {
+            return delegate.upsert(member);
+        } finally {
+            endSaveAfterCompletion(ticket);
+        }
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        List<String> memberIds = members.stream().map(Member::getMemberId).collect(Collectors.toList());
+        Object ticket = beginSave(memberIds);
+        try {
+            delegate.upsertAll(members);
+        } finally {
+            endSaveAfterCompletion(ticket);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        deletedSinceRebuild.increment();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public long getFalsePositiveCount() {
+        return falsePositiveCount.sum();
+    }
+
+    public long getDeletedSinceRebuild() {
+        return deletedSinceRebuild.sum();
+    }
+
+    public double expectedFalsePositiveRate() {
+        return filter.expectedFalsePositiveRate();
+    }
+
+    // 진행 중으로 먼저 등록하고 rebuilding 을 본다 - rebuild 는 rebuilding 을 걸고 진행 중인 save 를 본다 (둘 중 하나는 상대를 본다)
+    private Object beginSave(Collection<String> memberIds) {
+        Object ticket = new Object();
+        savesInFlight.put(ticket, memberIds);
+
+        MemberIdBloomFilter next = rebuilding;
+        MemberIdBloomFilter current = filter;
+        for (String memberId : memberIds) {
+            if (next != null) {
+                next.put(memberId);
+            }
+            current.put(memberId);
+        }
+        return ticket;
+    }
+
+    // 트랜젝션 안이면 commit (또는 rollback) 이 끝나야 스캔에 보이므로 그때 내린다
+    private void endSaveAfterCompletion(Object ticket) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            savesInFlight.remove(ticket);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                savesInFlight.remove(ticket);
+            }
+        });
+    }
+}
@@ -0,0 +1,266 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.domain.Member;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ findById 결과를 메모리에 들고 있는 Read-Through 캐시 데코레이터
+ - 최대 개수를 넘으면 가장 오래 안 쓴 것부터 밀어낸다 (LRU), 각 항목은 TTL 이 지나면 만료
+ - 쓰기 (update / delete / addMoney ...) 는 캐시에 값을 넣지 않고 무효화만 한다
+   > 트랜젝션 중이면 commit 이후에 무효화 (TransactionSynchronizationManager) - rollback 된 값이 캐시에 들어갈 일이 없다
+   > 같은 트랜젝션 안에서 방금 쓴 회원을 다시 조회하면 캐시를 거치지 않고 DB 에서 읽는다
+ - DB 에서 읽어오는 사이에 무효화가 일어났다면, 읽어온 (이미 옛날일 수 있는) 값은 캐시에 넣지 않는다
+ */
+@Slf4j
+public class CachingMemberRepository extends ForwardingMemberRepository {
+
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final Map<String, CacheEntry> entries;
+
+    private final AtomicLong invalidationCount = new AtomicLong(); // 읽는 도중 무효화가 있었는지 판단하는 용도
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public CachingMemberRepository(MemberRepository delegate, int maximumSize, Duration ttl) {
+        super(delegate);
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be positive = " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) { // accessOrder = true : LRU
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                if (size() > CachingMemberRepository.this.maximumSize) {
+                    evictionCount.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public Member findById(String memberId) {
+
+        // 이 트랜젝션에서 직접 바꾼 회원은 commit 전 값이 캐시와 다르므로 DB 에서 읽는다
+        if (isWrittenInCurrentTransaction(memberId)) {
+            return delegate.findById(memberId);
+        }
+
+        Member cached = getIfPresent(memberId);
+        if (cached != null) {
+            hitCount.increment();
+            return cached;
+        }
+
+        missCount.increment();
+        long invalidationsBeforeLoad = invalidationCount.get();
+        Member member = delegate.findById(memberId);
+        putIfNotInvalidated(memberId, member, invalidationsBeforeLoad);
+        return member;
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+
+        if (isWrittenInCurrentTransaction(memberId)) {
+            return delegate.findOptionalById(memberId);
+        }
+
+        Member cached = getIfPresent(memberId);
+        if (cached != null) {
+            hitCount.increment();
+            return Optional.of(cached);
+        }
+
+        missCount.increment();
+        long invalidationsBeforeLoad = invalidationCount.get();
+        Optional<Member> member = delegate.findOptionalById(memberId);
+        member.ifPresent(found -> putIfNotInvalidated(memberId, found, invalidationsBeforeLoad)); // 없는 회원은 캐시하지 않는다
+        return member;
+    }
+
+    @Override
+    public Member save(Member member) {
+        invalidateAfterCommit(member.getMemberId());
+        return delegate.save(member);
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        members.forEach(member -> invalidateAfterCommit(member.getMemberId()));
+        delegate.saveAll(members);
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        invalidateAfterCommit(member.getMemberId());
+        return delegate.upsert(member);
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        members.forEach(member -> invalidateAfterCommit(member.getMemberId()));
+        delegate.upsertAll(members);
+    }
+
+    @Override
+    public void update(String memberId, int updateMoney) {
+        invalidateAfterCommit(memberId);
+        delegate.update(memberId, updateMoney);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        invalidateAfterCommit(memberId);
+        return delegate.addMoney(memberId, delta);
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        invalidateAfterCommit(memberId);
+        return delegate.updateIfVersion(memberId, updateMoney, expectedVersion);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        invalidateAfterCommit(memberId);
+        delegate.delete(memberId);
+    }
+
+    public void invalidate(String memberId) {
+        synchronized (entries) {
+            invalidationCount.incrementAndGet();
+            entries.remove(memberId);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidationCount.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Member getIfPresent(String memberId) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(memberId);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(System.nanoTime())) {
+                entries.remove(memberId);
+                return null;
+            }
+            return copyOf(entry.member); // Member 는 setter 가 있으므로 꺼낼 때도 복사본을 준다
+        }
+    }
+
+    private void putIfNotInvalidated(String memberId, Member member, long invalidationsBeforeLoad) {
+        synchronized (entries) {
+            if (invalidationCount.get() != invalidationsBeforeLoad) {
+                return; // 읽는 사이에 누군가 commit 했다 - 지금 값이 옛날 값일 수 있으니 넣지 않는다
+            }
+            entries.put(memberId, new CacheEntry(copyOf(member), System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /*
+     트랜젝션 밖 - 바로 무효화
+     트랜젝션 안 - 이 트랜젝션에서 쓴 회원으로 기록해두고, commit 이 끝난 뒤에만 무효화한다 (rollback 이면 할 일 없음)
+     */
+    private void invalidateAfterCommit(String memberId) {
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(memberId);
+            return;
+        }
+
+        Set<String> writtenIds = writtenIdsInCurrentTransaction();
+        if (writtenIds == null) {
+            Set<String> newWrittenIds = new HashSet<>();
+            TransactionSynchronizationManager.bindResource(this, newWrittenIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    newWrittenIds.forEach(CachingMemberRepository.this::invalidate);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+                }
+            });
+            writtenIds = newWrittenIds;
+        }
+        writtenIds.add(memberId);
+    }
+
+    private boolean isWrittenInCurrentTransaction(String memberId) {
+        Set<String> writtenIds = writtenIdsInCurrentTransaction();
+        return writtenIds != null && writtenIds.contains(memberId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<String> writtenIdsInCurrentTransaction() {
+        return (Set<String>) TransactionSynchronizationManager.getResource(this);
+    }
+
+    private static Member copyOf(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+
+    private static class CacheEntry {
+
+        private final Member member;
+        private final long expiresAtNanos;
+
+        CacheEntry(Member member, long expiresAtNanos) {
+            this.member = member;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+
+        boolean isExpired(long nowNanos) {
+            return nowNanos - expiresAtNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package springdb.jdbc_study.repository;
+
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+ MemberRepository 를 감싸는 데코레이터들의 부모
+ - 기본은 모두 감싼 Repository 에 위임하고, 하위 클래스는 필요한 메서드만 override 한다
+ */
+public abstract class ForwardingMemberRepository implements MemberRepository {
+
+    protected final MemberRepository delegate;
+
+    protected ForwardingMemberRepository(MemberRepository delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return delegate.save(member);
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        delegate.saveAll(members);
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        return delegate.upsert(member);
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        delegate.upsertAll(members);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return delegate.findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return delegate.findOptionalById(memberId);
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        return delegate.findAllById(memberIds);
+    }
+
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+        return delegate.findAll(fetchSize);
+    }
+
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+        return delegate.findPageAfter(lastMemberId, limit);
+    }
+
+    @Override
+    public void update(String memberId, int updateMoney) {
+        delegate.update(memberId, updateMoney);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        return delegate.addMoney(memberId, delta);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return delegate.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        return delegate.updateIfVersion(memberId, updateMoney, expectedVersion);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+    }
+}
@@ -0,0 +1,359 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.support.LatencyHistogram;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ findById 의 꼬리 지연 (p99) 을 줄이기 위한 Hedged Read 데코레이터
+ - Primary 로 먼저 조회하고, hedge 지연 안에 답이 없으면 Replica 로 한번 더 조회해서 먼저 온 쪽을 쓴다
+ - 진 쪽은 Statement.cancel 로 멈춰서 DB 일을 줄인다
+ - Primary 조회는 호출 쓰레드에서 직접 실행한다 - hedge 하지 않는 대부분의 조회는 쓰레드를 갈아타지 않는다
+   > hedge 지연이 지나면 타이머가 Replica 조회를 띄우고, Replica 가 먼저 회원을 찾으면 Primary Statement 를 cancel 해서 호출 쓰레드를 깨운다
+   > Replica 조회는 maxConcurrentHedges 개까지만 동시에 - 넘치면 hedge 하지 않고 Primary 를 기다린다 (DB 가 느릴 때 부하를 두배로 만들지 않도록)
+ - hedge 지연 = 지금까지 Primary 응답시간의 percentile (예: p95)
+   > 샘플이 MIN_SAMPLES 보다 적을 때는 initialDelay 를 쓴다
+   > 매 조회마다 히스토그램을 훑지 않도록 RECOMPUTE_EVERY 번에 한번만 다시 계산한다
+   > cancel 된 Primary 도 cancel 될 때까지의 시간을 (실제 응답시간의 하한) 기록한다 - 느린 샘플이 빠지면 지연이 점점 짧아진다
+ - 조회를 직접 실행해야 Statement 를 잡고 cancel 할 수 있으므로 findById 는 두 DataSource 에서 직접 읽는다
+ - 트랜젝션 안의 조회는 그 트랜젝션 Connection 을 써야 하므로 hedge 하지 않는다
+ - Replica 는 늦을 수 있다 - Replica 가 이기면 조금 옛날 값일 수 있다
+   > Replica 의 "회원 없음" 은 아직 복제가 안 된 것일 수 있으므로 진 것으로 보고 Primary 를 계속 기다린다
+ */
+@Slf4j
+public class HedgingMemberRepository extends ForwardingMemberRepository implements AutoCloseable {
+
+    static final int MIN_SAMPLES = 100;
+    static final int RECOMPUTE_EVERY = 64;
+    public static final int DEFAULT_MAX_CONCURRENT_HEDGES = 8;
+
+    private static final String FIND_BY_ID = "select member_id, money, version from member where member_id = ?";
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final double percentile;
+    private final long initialDelayNanos;
+    private final SQLExceptionTranslator exceptionTranslator;
+    private final ScheduledExecutorService timer; // hedge 지연을 재기만 한다 - Replica 조회는 executor 에서
+    private final ExecutorService executor;
+
+    private final LatencyHistogram primaryLatency = new LatencyHistogram();
+    private final AtomicLong hedgeDelayNanos;
+    private final AtomicInteger callsSinceRecompute = new AtomicInteger();
+
+    private final LongAdder hedgeCount = new LongAdder();
+    private final LongAdder primaryWinCount = new LongAdder();
+    private final LongAdder replicaWinCount = new LongAdder();
+    private final LongAdder cancelCount = new LongAdder();
+    private final LongAdder skippedHedgeCount = new LongAdder();
+
+    public HedgingMemberRepository(MemberRepository delegate, DataSource primary, DataSource replica,
+                                   double percentile, Duration initialDelay) {
+        this(delegate, primary, replica, percentile, initialDelay, DEFAULT_MAX_CONCURRENT_HEDGES);
+    }
+
+    public HedgingMemberRepository(MemberRepository delegate, DataSource primary, DataSource replica,
+                                   double percentile, Duration initialDelay, int maxConcurrentHedges) {
+        super(delegate);
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in (0, 100] = " + percentile);
+        }
+        if (maxConcurrentHedges <= 0) {
+            throw new IllegalArgumentException("maxConcurrentHedges must be positive = " + maxConcurrentHedges);
+        }
+        this.primary = primary;
+        this.replica = replica;
+        this.percentile = percentile;
+        this.initialDelayNanos = initialDelay.toNanos();
+        this.hedgeDelayNanos = new AtomicLong(initialDelayNanos);
+        this.exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(primary);
+
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, daemon("hedged-read-timer"));
+        scheduler.setRemoveOnCancelPolicy(true); // 대부분의 타이머는 cancel 된다 - 큐에 쌓아두지 않는다
+        this.timer = scheduler;
+
+        // 쓰레드가 모두 바쁘면 큐에 넣지 않고 거절 (SynchronousQueue) - 늦게 시작하는 hedge 는 의미가 없다
+        ThreadPoolExecutor replicaExecutor = new ThreadPoolExecutor(maxConcurrentHedges, maxConcurrentHedges,
+                60, TimeUnit.SECONDS, new SynchronousQueue<>(), daemon("hedged-read"));
+        replicaExecutor.allowCoreThreadTimeOut(true);
+        this.executor = replicaExecutor;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findById(memberId);
+        }
+
+        HedgedRead primaryRead = new HedgedRead(primary, memberId, primaryLatency);
+        ScheduledFuture<?> hedgeTimer = scheduleHedge(primaryRead);
+
+        primaryRead.run(); // 호출 쓰레드에서 - Replica 가 이기면 cancel 되어 돌아온다
+        if (hedgeTimer != null) {
+            hedgeTimer.cancel(false);
+        }
+        HedgedRead replicaRead = primaryRead.finish();
+
+        Member member = pickWinner(primaryRead, replicaRead);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId = " + memberId);
+        }
+        return member;
+    }
+
+    public long getHedgeCount() {
+        return hedgeCount.sum();
+    }
+
+    public long getPrimaryWinCount() {
+        return primaryWinCount.sum();
+    }
+
+    public long getReplicaWinCount() {
+        return replicaWinCount.sum();
+    }
+
+    public long getCancelCount() {
+        return cancelCount.sum();
+    }
+
+    // hedge 지연이 지났지만 Replica 쓰레드가 모두 바빠서 보내지 않은 횟수
+    public long getSkippedHedgeCount() {
+        return skippedHedgeCount.sum();
+    }
+
+    public long getHedgeDelayNanos() {
+        return hedgeDelayNanos.get();
+    }
+
+    public LatencyHistogram getPrimaryLatency() {
+        return primaryLatency;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // 닫힌 뒤에는 타이머를 걸 수 없다 - hedge 없이 Primary 만 읽는다
+    private ScheduledFuture<?> scheduleHedge(HedgedRead primaryRead) {
+        try {
+            return timer.schedule(() -> startReplica(primaryRead), currentHedgeDelayNanos(), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    // 타이머 쓰레드 - Primary 가 아직 안 끝났으면 Replica 로 한번 더 보낸다. Replica 가 먼저 회원을 찾으면 Primary 를 cancel
+    private void startReplica(HedgedRead primaryRead) {
+        HedgedRead replicaRead = new HedgedRead(replica, primaryRead.memberId, null);
+        if (!primaryRead.attachReplica(replicaRead)) {
+            return; // 그 사이 Primary 가 끝났다
+        }
+        replicaRead.future.thenAccept(member -> {
+            if (member != null) {
+                primaryRead.cancel();
+            }
+        });
+        try {
+            executor.execute(replicaRead::run);
+            hedgeCount.increment();
+        } catch (RejectedExecutionException e) {
+            skippedHedgeCount.increment();
+            replicaRead.future.cancel(false);
+        }
+    }
+
+    /*
+     Primary 가 끝난 뒤 (호출 쓰레드) - 둘 중 먼저 "성공한" 쪽을 쓴다
+     - Primary 가 성공했으면 Primary (떠 있는 Replica 는 cancel) - 회원 없음도 Primary 의 답이면 그대로 쓴다
+     - Primary 가 cancel 됐으면 Replica 가 먼저 회원을 찾은 것
+     - Primary 가 실패했으면 Replica 를 기다린다 - Replica 도 실패하거나 회원이 없다고 하면 Primary 의 예외를 던진다
+     */
+    private Member pickWinner(HedgedRead primaryRead, HedgedRead replicaRead) {
+
+        CompletableFuture<Member> primaryFuture = primaryRead.future;
+        if (!primaryFuture.isCompletedExceptionally()) {
+            if (replicaRead != null) {
+                replicaRead.cancel();
+            }
+            primaryWinCount.increment();
+            return primaryFuture.join();
+        }
+
+        if (replicaRead == null || (!primaryFuture.isCancelled() && !replicaSucceeds(replicaRead))) {
+            throw failureOf(primaryFuture);
+        }
+        replicaWinCount.increment();
+        return replicaRead.future.join();
+    }
+
+    private boolean replicaSucceeds(HedgedRead replicaRead) {
+        try {
+            return replicaRead.future.join() != null;
+        } catch (CompletionException | CancellationException e) {
+            return false;
+        }
+    }
+
+    private static RuntimeException failureOf(CompletableFuture<Member> future) {
+        try {
+            future.join();
+            return new IllegalStateException("hedged read did not fail");
+        } catch (CompletionException e) {
+            return unwrap(e.getCause());
+        } catch (CancellationException e) {
+            return e;
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private long currentHedgeDelayNanos() {
+        if (callsSinceRecompute.incrementAndGet() >= RECOMPUTE_EVERY) {
+            callsSinceRecompute.set(0);
+            if (primaryLatency.getCount() >= MIN_SAMPLES) {
+                hedgeDelayNanos.set(Math.max(1, primaryLatency.percentileNanos(percentile)));
+            }
+        }
+        return hedgeDelayNanos.get();
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        if (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    /*
+     조회 한번 - 실행 중인 Statement 를 들고 있다가 cancel 할 수 있다
+     - Primary 는 호출 쓰레드가, Replica 는 executor 가 run 을 실행한다
+     - statement 를 먼저 기록하고 cancelled 를 보며, cancel 은 cancelled 를 먼저 쓰고 statement 를 본다
+       > 둘 다 volatile 이라 어느 순서로 겹쳐도 한쪽은 반드시 상대를 본다
+     */
+    private class HedgedRead {
+
+        private final DataSource dataSource;
+        private final String memberId;
+        private final LatencyHistogram latency; // Primary 만 기록한다
+        private final CompletableFuture<Member> future = new CompletableFuture<>();
+
+        private volatile PreparedStatement statement;
+        private volatile boolean cancelled;
+
+        HedgedRead(DataSource dataSource, String memberId, LatencyHistogram latency) {
+            this.dataSource = dataSource;
+            this.memberId = memberId;
+            this.latency = latency;
+        }
+
+        private HedgedRead replicaRead; // Primary 만 - this 로 동기화
+        private boolean finished;
+
+        // 타이머 쓰레드 - Primary 가 이미 끝났으면 false
+        synchronized boolean attachReplica(HedgedRead replicaRead) {
+            if (finished) {
+                return false;
+            }
+            this.replicaRead = replicaRead;
+            return true;
+        }
+
+        // 호출 쓰레드 - 이후에는 Replica 를 붙이지 않는다
+        synchronized HedgedRead finish() {
+            finished = true;
+            return replicaRead;
+        }
+
+        void run() {
+            long startNanos = System.nanoTime();
+            try (Connection con = dataSource.getConnection();
+                 PreparedStatement pstmt = con.prepareStatement(FIND_BY_ID)) {
+
+                statement = pstmt;
+                if (cancelled) {
+                    recordLatency(startNanos);
+                    future.cancel(false);
+                    return;
+                }
+                pstmt.setString(1, memberId);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    Member member = rs.next()
+                            ? new Member(rs.getString("member_id"), rs.getInt("money"), rs.getLong("version"))
+                            : null;
+                    recordLatency(startNanos);
+                    future.complete(member);
+                }
+
+            } catch (SQLException e) {
+                if (cancelled) {
+                    recordLatency(startNanos); // 실제로는 이보다 더 걸렸을 것 - 하한으로 기록
+                    future.cancel(false);
+                } else {
+                    future.completeExceptionally(exceptionTranslator.translate("HEDGED FINDBYID EXCEPTION OCCUR", FIND_BY_ID, e));
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void recordLatency(long startNanos) {
+            if (latency != null) {
+                latency.record(System.nanoTime() - startNanos);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            PreparedStatement pstmt = statement;
+            if (pstmt == null || future.isDone()) {
+                return;
+            }
+            try {
+                pstmt.cancel();
+                cancelCount.increment();
+            } catch (SQLException e) {
+                log.debug("hedged read cancel 실패 (이미 끝났을 수 있음)", e);
+            }
+        }
+    }
+}
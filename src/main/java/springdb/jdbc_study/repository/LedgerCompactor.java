@@ -0,0 +1,54 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+ LedgerMemberRepository.compact() 를 주기적으로 돌려주는 백그라운드 작업
+ - 원장 꼬리가 길어질수록 잔액 조회 (스냅샷 + 꼬리 합) 가 느려지므로 계속 접어 넣는다
+ - 한 번 실패해도 (Lock 타임아웃 등) 다음 주기에 다시 시도한다
+ */
+@Slf4j
+public class LedgerCompactor implements AutoCloseable {
+
+    private final LedgerMemberRepository ledgerRepository;
+    private final ScheduledExecutorService scheduler;
+
+    public LedgerCompactor(LedgerMemberRepository ledgerRepository, Duration interval) {
+        this.ledgerRepository = ledgerRepository;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ledger-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = interval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void compactQuietly() {
+        try {
+            int entries = ledgerRepository.compact();
+            if (entries > 0) {
+                log.debug("ledger compacted entries = {}", entries);
+            }
+        } catch (RuntimeException e) {
+            log.warn("ledger compaction 실패 - 다음 주기에 다시 시도", e);
+        }
+    }
+
+    // 종료 전에 한번 더 접어 넣는다
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        compactQuietly();
+    }
+}
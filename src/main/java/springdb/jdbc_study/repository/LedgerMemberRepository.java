@@ -0,0 +1,282 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+import springdb.jdbc_study.repository.support.VarcharArraySetter;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+ 잔액을 제자리에서 바꾸지 않고, 입출금을 원장 (member_ledger) 에 쌓기만 하는 Repository
+ - 잔액 = member.money (스냅샷) + 아직 압축 안 된 원장 항목의 합 - 항상 한 SQL 로 읽으므로 압축 중에도 어긋나지 않는다
+ - 입금은 insert 한번, member row 는 건드리지 않는다 (row lock 경합 없음)
+ - 출금은 잔액 확인을 위해 출금 회원 row 에만 lock 을 잡는다
+ - compact() 가 원장 꼬리를 member.money 로 접어 넣는다. 원장 항목은 지우지 않고 compaction_id 만 남긴다 (이력 유지)
+ - version = member.version (스냅샷) + 원장 꼬리 항목 수 - 입금을 포함해 원장에 한 줄 쌓일 때마다 1씩 오른다
+   > 압축은 접어 넣은 항목 수만큼 member.version 도 올리므로 보이는 version 은 그대로
+ - 스냅샷 / 원장을 직접 다루므로 다른 Repository 를 감싸지 않는다 (JdbcTemplate - V5 방식)
+ */
+@Slf4j
+public class LedgerMemberRepository implements MemberRepository {
+
+    private static final String SELECT_MEMBER =
+            "select m.member_id," +
+            " m.version + (select count(*) from member_ledger l where l.member_id = m.member_id and l.compaction_id is null) as version," +
+            " m.money + coalesce((select sum(l.amount) from member_ledger l" +
+            " where l.member_id = m.member_id and l.compaction_id is null), 0) as money from member m";
+
+    private static final String INSERT_ENTRY =
+            "insert into member_ledger(member_id, amount) values (?, ?)";
+
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate; // 이미 트랜젝션 중이면 참여 (REQUIRED)
+
+    public LedgerMemberRepository(DataSource dataSource) {
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+    }
+
+    // 처음 잔액은 스냅샷에 바로 넣는다
+    @Override
+    public Member save(Member member) {
+        template.update("insert into member(member_id, money) values (?, ?)", member.getMemberId(), member.getMoney());
+        return member;
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        template.batchUpdate("insert into member(member_id, money) values (?, ?)", members, MemberRepositoryV5.DEFAULT_BATCH_SIZE, (ps, member) -> {
+            ps.setString(1, member.getMemberId());
+            ps.setInt(2, member.getMoney());
+        });
+    }
+
+    /*
+     잔액이 스냅샷 + 원장 합이라 MERGE 한 문장으로 덮어쓸 수 없다
+     - 회원 row 에 lock 을 잡고, 있으면 update 와 같이 차액을 한 줄 쌓고, 없으면 save
+     - 같은 새 ID 를 동시에 save 하면 한쪽은 중복 키 - 먼저 commit 된 회원에 lock 을 잡고 차액을 쌓는다
+     */
+    @Override
+    public Member upsert(Member member) {
+        txTemplate.executeWithoutResult(status -> upsertLocked(member));
+        return member;
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        txTemplate.executeWithoutResult(status -> members.forEach(this::upsertLocked));
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return template.queryForObject(SELECT_MEMBER + " where m.member_id = ?", memberRowMapper(), memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return template.query(SELECT_MEMBER + " where m.member_id = ?", memberRowMapper(), memberId).stream().findFirst();
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        Object[] ids = memberIds.stream().distinct().toArray();
+        return template.query(SELECT_MEMBER + " where m.member_id = any(?)", new VarcharArraySetter(ids), memberRowMapper());
+    }
+
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+        return template.queryForStream(con -> {
+            PreparedStatement pstmt = con.prepareStatement(SELECT_MEMBER);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        }, memberRowMapper());
+    }
+
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive = " + limit);
+        }
+
+        List<Member> members = lastMemberId == null
+                ? template.query(SELECT_MEMBER + " order by m.member_id limit ?", memberRowMapper(), limit + 1)
+                : template.query(SELECT_MEMBER + " where m.member_id > ? order by m.member_id limit ?", memberRowMapper(), lastMemberId, limit + 1);
+
+        if (members.size() <= limit) {
+            return new MemberPage(members, null);
+        }
+
+        members.remove(limit);
+        return new MemberPage(members, members.get(limit - 1).getMemberId());
+    }
+
+    // member row 에 lock 을 잡으면 압축도 이 회원을 건드릴 수 없으므로, 그 다음 읽은 잔액은 commit 까지 유효하다
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return txTemplate.execute(status -> {
+            lockMember(memberId);
+            return findById(memberId);
+        });
+    }
+
+    // 절대값 update 도 덮어쓰지 않고, 차액을 조정 항목으로 쌓는다
+    @Override
+    public void update(String memberId, int updateMoney) {
+        txTemplate.executeWithoutResult(status -> {
+            Member member = findByIdForUpdate(memberId);
+            template.update(INSERT_ENTRY, memberId, updateMoney - member.getMoney());
+        });
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+
+        if (delta >= 0) { // 입금 - 회원이 있을 때만 한 줄 쌓는다
+            return template.update("insert into member_ledger(member_id, amount) select member_id, ? from member where member_id = ?",
+                    delta, memberId) == 1;
+        }
+
+        Boolean debited = txTemplate.execute(status -> {
+            Integer balance = lockedBalance(memberId);
+            if (balance == null || balance + delta < 0) {
+                return false; // 회원 없음 또는 잔액 부족
+            }
+            template.update(INSERT_ENTRY, memberId, delta);
+            return true;
+        });
+        return Boolean.TRUE.equals(debited);
+    }
+
+    /*
+     출금 / 입금 항목을 batch insert 한번으로 쌓는다
+     - 출금 회원 row 에 lock 을 잡고 잔액을 확인한 다음, 입금 회원이 있을 때만 쌓는다 (false 면 아무것도 안 쌓임)
+     */
+    public boolean appendTransfer(String fromId, String toId, int money) {
+
+        Boolean appended = txTemplate.execute(status -> {
+            Integer balance = lockedBalance(fromId);
+            if (balance == null || balance < money) {
+                return false;
+            }
+            Integer toMembers = template.queryForObject("select count(*) from member where member_id = ?", Integer.class, toId);
+            if (toMembers == null || toMembers == 0) {
+                return false;
+            }
+            template.batchUpdate(INSERT_ENTRY, List.of(new Object[]{fromId, -money}, new Object[]{toId, money}));
+            return true;
+        });
+        return Boolean.TRUE.equals(appended);
+    }
+
+    /*
+     원장 꼬리를 스냅샷으로 접어 넣는다 - 한 트랜젝션
+     1) 아직 압축 안 된 항목에 이번 compaction_id 를 찍는다
+     2) 방금 찍은 항목들의 합만큼 member.money 를, 항목 수만큼 member.version 을 올린다
+     - 찍은 항목만 더하므로, 압축 도중에 쌓이는 항목은 빠지거나 두번 더해지지 않고 다음 압축으로 넘어간다
+     @return 접어 넣은 원장 항목 수
+     */
+    public int compact() {
+        Integer compacted = txTemplate.execute(status -> {
+            Long compactionId = template.queryForObject("select next value for member_ledger_compaction_seq", Long.class);
+
+            int entries = template.update("update member_ledger set compaction_id = ? where compaction_id is null", compactionId);
+            if (entries == 0) {
+                return 0;
+            }
+
+            template.update("update member m set" +
+                            " money = money + (select sum(l.amount) from member_ledger l where l.member_id = m.member_id and l.compaction_id = ?)," +
+                            " version = version + (select count(*) from member_ledger l where l.member_id = m.member_id and l.compaction_id = ?)" +
+                            " where m.member_id in (select member_id from member_ledger where compaction_id = ?)",
+                    compactionId, compactionId, compactionId);
+            return entries;
+        });
+        return compacted == null ? 0 : compacted;
+    }
+
+    // 아직 압축 안 된 원장 항목 수
+    public long getTailSize() {
+        Long tail = template.queryForObject("select count(*) from member_ledger where compaction_id is null", Long.class);
+        return tail == null ? 0 : tail;
+    }
+
+    /*
+     낙관적 락 - upsert 와 같이 회원 row 에 lock 을 잡고 version 이 같을 때만 차액을 한 줄 쌓는다
+     - version 에 원장 꼬리 항목 수가 들어있으므로, 읽은 뒤 들어온 입금 / 출금이 있으면 false
+     - 출금 / 압축도 회원 row lock 을 잡으므로 비교와 쌓기 사이에 끼어들지 못한다
+       > lock 없이 쌓이는 입금도 commit 되면 version 에 보이고, 아직 commit 전인 입금은 차액 위에 더해지므로 사라지지 않는다
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        Boolean updated = txTemplate.execute(status -> {
+            if (!lockMember(memberId)) {
+                return false;
+            }
+            Member member = findById(memberId);
+            if (member.getVersion() != expectedVersion) {
+                return false;
+            }
+            template.update(INSERT_ENTRY, memberId, updateMoney - member.getMoney());
+            return true;
+        });
+        return Boolean.TRUE.equals(updated);
+    }
+
+    // 원장 이력까지 같이 지운다
+    @Override
+    public void delete(String memberId) {
+        txTemplate.executeWithoutResult(status -> {
+            template.update("delete from member_ledger where member_id = ?", memberId);
+            template.update("delete from member where member_id = ?", memberId);
+        });
+    }
+
+    private Integer lockedBalance(String memberId) {
+        if (!lockMember(memberId)) {
+            return null;
+        }
+        return findById(memberId).getMoney();
+    }
+
+    private void upsertLocked(Member member) {
+        String memberId = member.getMemberId();
+        if (!lockMember(memberId)) {
+            try {
+                save(member);
+                return;
+            } catch (DuplicateKeyException e) {
+                // 다른 Tx 가 같은 ID 를 먼저 commit 했다 - H2 는 실패한 문장만 되돌리므로 이 Tx 에서 그대로 lock 을 잡는다
+                if (!lockMember(memberId)) {
+                    throw e;
+                }
+            }
+        }
+        template.update(INSERT_ENTRY, memberId, member.getMoney() - findById(memberId).getMoney());
+    }
+
+    private boolean lockMember(String memberId) {
+        return !template.queryForList("select member_id from member where member_id = ? for update", String.class, memberId).isEmpty();
+    }
+
+    private RowMapper<Member> memberRowMapper() {
+        return (rs, rowNum) -> {
+            Member member = new Member();
+            member.setMemberId(rs.getString("member_id"));
+            member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
+            return member;
+        };
+    }
+}
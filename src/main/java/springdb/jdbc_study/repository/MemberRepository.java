@@ -1,14 +1,57 @@
 package springdb.jdbc_study.repository;
 
 import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface MemberRepository {
 
     Member save(Member member);
 
+    // 대량 등록 - 한 건씩 왕복하지 않고 batch 로 묶어서 보낸다
+    void saveAll(Collection<Member> members);
+
+    /*
+     있으면 money 를 덮어쓰고 (version + 1), 없으면 새로 등록 - 조회 없이 한번에 보낸다
+     - findById -> NoSuchElementException -> save / update 로 나눠 부르던 동기화 작업용
+     */
+    Member upsert(Member member);
+
+    // upsert 를 batch 로 묶어서 보낸다
+    void upsertAll(Collection<Member> members);
+
     Member findById(String memberId);
 
+    // 없으면 예외 대신 Optional.empty() - 없는 ID 조회가 잦을 때 예외 (stack trace) 를 만들지 않는다
+    Optional<Member> findOptionalById(String memberId);
+
+    // 한번에 여러 회원 조회 - 없는 ID 는 결과에서 빠진다 (순서 보장 X)
+    List<Member> findAllById(Collection<String> memberIds);
+
+    /*
+     전체 회원을 커서로 fetchSize 만큼씩 읽어오는 Stream
+     - 테이블 전체를 List 로 올리지 않는다
+     - Connection 을 붙잡고 있으므로 반드시 닫아야 한다 (try-with-resources)
+     */
+    Stream<Member> findAll(int fetchSize);
+
+    // member_id 순 Keyset 페이징 - lastMemberId 가 null 이면 첫 페이지
+    MemberPage findPageAfter(String lastMemberId, int limit);
+
     void update(String memberId, int updateMoney);
 
+    // 상대값 변경 (money = money + delta) - 결과가 음수가 되거나 회원이 없으면 변경하지 않고 false
+    boolean addMoney(String memberId, int delta);
+
+    // 비관적 락 - 트랜젝션이 끝날 때까지 이 row 를 다른 Tx 가 바꿀 수 없다
+    Member findByIdForUpdate(String memberId);
+
+    // 낙관적 락 - 읽었을 때의 version 그대로일 때만 바꾼다. false 면 그 사이에 누가 바꾼 것
+    boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion);
+
     void delete(String memberId);
 }
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.support.PreparedStatementCache;
 
 import javax.sql.DataSource;
 import java.sql.*;
@@ -20,9 +21,15 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV3 implements MemberRepositoryEx{
 
     private final DataSource dataSource;
+    private final PreparedStatementCache statementCache; // 같은 트랜젝션 안에서 반복되는 SQL 은 다시 파싱하지 않는다
 
     public MemberRepositoryV3(DataSource dataSource) {
+        this(dataSource, PreparedStatementCache.DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    public MemberRepositoryV3(DataSource dataSource, int statementCacheSize) {
         this.dataSource = dataSource;
+        this.statementCache = new PreparedStatementCache(dataSource, statementCacheSize);
     }
 
     private Connection getConnection() throws SQLException {
@@ -37,8 +44,9 @@ public class MemberRepositoryV3 implements MemberRepositoryEx{
     private void close(Connection con, Statement stmt, ResultSet rs) {
 
         // Connection 빼고는 원래 닫던 방식 유지
+        // 단, 트랜젝션 중 캐시된 Statement 는 닫지 않는다 (트랜젝션이 끝날 때 캐시가 정리)
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        statementCache.closeStatement(con, stmt);
 
         // 주의 ! 트랜젝션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다
         // 트랜젝션 진행중일 경우 - SyncManager 에 반환
@@ -57,7 +65,7 @@ public class MemberRepositoryV3 implements MemberRepositoryEx{
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
@@ -87,7 +95,7 @@ public class MemberRepositoryV3 implements MemberRepositoryEx{
             // MEMO :: 다시 getConnection 을 해도 됨
             //         왜냐하면 SyncManager 에서 가져오기 때문임!
             con = getConnection(); // getConnection 방식이 V1과는 바뀌었음!!
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
 
             rs = pstmt.executeQuery();
@@ -121,7 +129,7 @@ public class MemberRepositoryV3 implements MemberRepositoryEx{
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setInt(1, updateMoney);
             pstmt.setString(2, memberId);
@@ -148,7 +156,7 @@ public class MemberRepositoryV3 implements MemberRepositoryEx{
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setString(1, memberId);
             int effectedRow = pstmt.executeUpdate(); // 역시 1을 반환
@@ -6,11 +6,23 @@ import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
 import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
 import springdb.jdbc_study.repository.exception.MyDbException;
+import springdb.jdbc_study.repository.support.PreparedStatementCache;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /*
  SQL ExceptionTranslator 추가로 원하는 Exception 을 제어할 수 있다
@@ -18,12 +30,41 @@ import java.util.NoSuchElementException;
 @Slf4j
 public class MemberRepositoryV4_2 implements MemberRepository {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // V4_1 / V5 도 이 문장을 쓴다 (설명은 upsert)
+    static final String UPSERT_SQL =
+            "merge into member m" +
+            " using (select cast(? as varchar(10)) as member_id, cast(? as integer) as money) s" +
+            " on m.member_id = s.member_id" +
+            " when matched then update set money = s.money, version = m.version + 1" +
+            " when not matched then insert (member_id, money) values (s.member_id, s.money)";
+
     private final DataSource dataSource;
     private final SQLExceptionTranslator exceptionTranslator;
+    private final int batchSize; // saveAll 에서 몇 건마다 executeBatch 할지
+    private final PreparedStatementCache statementCache; // 같은 트랜젝션 안에서 반복되는 SQL 은 다시 파싱하지 않는다
+
+    public MemberRepositoryV4_2(DataSource dataSource) { // 기본 변환기는 SQLErrorCodeSQLExceptionTranslator, 다른 변환기 (H2ErrorCodeTranslator 등) 는 마지막 생성자로 // 그냥 SQL 측면에서만 일단 살펴보는거다
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize) {
+        this(dataSource, batchSize, PreparedStatementCache.DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize, int statementCacheSize) {
+        this(dataSource, batchSize, statementCacheSize, new SQLErrorCodeSQLExceptionTranslator(dataSource));
+    }
 
-    public MemberRepositoryV4_2(DataSource dataSource) { // SQLException 은 직접 구현체로 넣어줍니다 // 그냥 SQL 측면에서만 일단 살펴보는거다
+    public MemberRepositoryV4_2(DataSource dataSource, int batchSize, int statementCacheSize, SQLExceptionTranslator exceptionTranslator) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive = " + batchSize);
+        }
         this.dataSource = dataSource;
-        this.exceptionTranslator = new SQLErrorCodeSQLExceptionTranslator(dataSource);
+        this.exceptionTranslator = exceptionTranslator;
+        this.batchSize = batchSize;
+        this.statementCache = new PreparedStatementCache(dataSource, statementCacheSize);
     }
 
     private Connection getConnection() throws SQLException {
@@ -38,8 +79,9 @@ public class MemberRepositoryV4_2 implements MemberRepository {
     private void close(Connection con, Statement stmt, ResultSet rs) {
 
         // Connection 빼고는 원래 닫던 방식 유지
+        // 단, 트랜젝션 중 캐시된 Statement 는 닫지 않는다 (트랜젝션이 끝날 때 캐시가 정리)
         JdbcUtils.closeResultSet(rs);
-        JdbcUtils.closeStatement(stmt);
+        statementCache.closeStatement(con, stmt);
 
         // 주의 ! 트랜젝션 동기화를 사용하려면 DataSourceUtils 를 사용해야 한다
         // 트랜젝션 진행중일 경우 - SyncManager 에 반환
@@ -59,7 +101,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setString(1, member.getMemberId());
             pstmt.setInt(2, member.getMoney());
@@ -76,6 +118,114 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         }
     }
 
+    /*
+     대량 등록 - save 처럼 한 건마다 executeUpdate 로 왕복하지 않고
+     addBatch 로 모아두었다가 batchSize 마다 executeBatch 로 한번에 보낸다
+     */
+    @Override
+    public void saveAll(Collection<Member> members) {
+
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+
+            int count = 0;
+            for (Member member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+
+                if (++count % batchSize == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+
+            if (count % batchSize != 0) { // 남은 것들
+                pstmt.executeBatch();
+            }
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("SAVEALL EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    /*
+     H2 MERGE 한 문장으로 등록 / 수정을 같이 처리한다 - 조회 왕복도, 없을 때 예외도 없다
+     - MERGE INTO ... KEY(member_id) VALUES 형식은 기존 row 를 참조할 수 없어서 version 을 올리지 못한다
+       > 표준 MERGE ... USING 으로 있으면 version + 1, 없으면 insert (기본값 0)
+     - 파라미터 타입을 알 수 있도록 USING 쪽에서 cast 해준다
+     */
+    @Override
+    public Member upsert(Member member) {
+
+        String sql = UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+
+            pstmt.executeUpdate(); // 등록이든 수정이든 1
+
+            return member;
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("UPSERT EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    // saveAll 과 같이 batchSize 마다 executeBatch
+    @Override
+    public void upsertAll(Collection<Member> members) {
+
+        String sql = UPSERT_SQL;
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = con.prepareStatement(sql);
+
+            int count = 0;
+            for (Member member : members) {
+                pstmt.setString(1, member.getMemberId());
+                pstmt.setInt(2, member.getMoney());
+                pstmt.addBatch();
+
+                if (++count % batchSize == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+
+            if (count % batchSize != 0) { // 남은 것들
+                pstmt.executeBatch();
+            }
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("UPSERTALL EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     public Member findById(String memberId) {
 
         String sql = "select * from member where member_id = ? ";
@@ -89,7 +239,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
             // MEMO :: 다시 getConnection 을 해도 됨
             //         왜냐하면 SyncManager 에서 가져오기 때문임!
             con = getConnection(); // getConnection 방식이 V1과는 바뀌었음!!
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
             pstmt.setString(1, memberId);
 
             rs = pstmt.executeQuery();
@@ -98,6 +248,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
                 return member;
             } else {
                 throw new NoSuchElementException("member not found memberId = " + memberId);
@@ -112,9 +263,214 @@ public class MemberRepositoryV4_2 implements MemberRepository {
     }
 
 
+    // findById 와 같은 조회 - 없으면 예외를 만들지 않고 Optional.empty()
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+
+        String sql = "select * from member where member_id = ? ";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql); // findById 와 같은 SQL 이라 PSTMT 캐시를 같이 탄다
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            Member member = new Member();
+            member.setMemberId(rs.getString("member_id"));
+            member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
+            return Optional.of(member);
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("FINDBYID EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+
+    /*
+     findById 를 N 번 부르면 Connection 획득 + 왕복이 N 번
+     - ID 들을 H2 배열 파라미터 하나로 묶어서 (member_id = ANY(?)) 한번에 조회한다
+     - ID 수가 달라도 SQL 모양이 같으므로 PSTMT 캐시를 그대로 탄다
+     - 너무 많으면 batchSize 단위로 잘라서 같은 PSTMT 로 여러번 실행한다
+     */
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+
+        String sql = "select * from member where member_id = any(?)";
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds)); // 중복 제거
+        List<Member> members = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return members;
+        }
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<String> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+
+                Array idArray = con.createArrayOf("VARCHAR", chunk.toArray());
+                try {
+                    pstmt.setArray(1, idArray);
+
+                    rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        Member member = new Member();
+                        member.setMemberId(rs.getString("member_id"));
+                        member.setMoney(rs.getInt("money"));
+                        member.setVersion(rs.getLong("version"));
+                        members.add(member);
+                    }
+                    JdbcUtils.closeResultSet(rs);
+                    rs = null;
+                } finally {
+                    idArray.free(); // 조회가 실패해도 풀어준다
+                }
+            }
+
+            return members;
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("FINDALLBYID EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+
+    /*
+     ResultSet 을 커서처럼 한 줄씩 넘기는 Stream
+     - 여기서는 Connection / PSTMT / RS 를 닫지 않는다
+     - Stream 을 close 할 때 (onClose) 기존 close 로 닫고, Connection 도 DataSourceUtils 로 반환한다
+     */
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+
+        String sql = "select * from member";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY); // 캐시하지 않는다
+            pstmt.setFetchSize(fetchSize); // 한번에 몇 줄씩 가져올지
+
+            rs = pstmt.executeQuery();
+
+        } catch (SQLException e) {
+            close(con, pstmt, rs);
+            throw exceptionTranslator.translate("FINDALL EXCEPTION OCCUR", sql, e);
+        }
+
+        Connection openCon = con;
+        PreparedStatement openPstmt = pstmt;
+        ResultSet openRs = rs;
+
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!openRs.next()) {
+                        return false;
+                    }
+                    Member member = new Member();
+                    member.setMemberId(openRs.getString("member_id"));
+                    member.setMoney(openRs.getInt("money"));
+                    member.setVersion(openRs.getLong("version"));
+                    action.accept(member);
+                    return true;
+                } catch (SQLException e) {
+                    throw exceptionTranslator.translate("FINDALL EXCEPTION OCCUR", sql, e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> close(openCon, openPstmt, openRs));
+    }
+
+
+    /*
+     OFFSET 페이징은 앞 페이지들을 모두 읽고 버리므로 깊어질수록 느려진다
+     - 마지막으로 본 member_id 보다 큰 것부터 PK 인덱스를 타고 limit 개만 읽는다
+     - limit + 1 개를 읽어서 다음 페이지가 있는지 판단한다
+     */
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive = " + limit);
+        }
+
+        String sql = lastMemberId == null
+                ? "select * from member order by member_id limit ?"
+                : "select * from member where member_id > ? order by member_id limit ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+
+            int index = 1;
+            if (lastMemberId != null) {
+                pstmt.setString(index++, lastMemberId);
+            }
+            pstmt.setInt(index, limit + 1);
+
+            rs = pstmt.executeQuery();
+
+            List<Member> members = new ArrayList<>(limit + 1);
+            while (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                members.add(member);
+            }
+
+            if (members.size() <= limit) {
+                return new MemberPage(members, null); // 마지막 페이지
+            }
+
+            members.remove(limit);
+            return new MemberPage(members, members.get(limit - 1).getMemberId());
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("FINDPAGEAFTER EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+
     public void update(String memberId, int updateMoney) {
 
-        String sql = "update member set money = ? where member_id = ?";
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
         Connection con = null;
         PreparedStatement pstmt = null;
@@ -122,7 +478,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setInt(1, updateMoney);
             pstmt.setString(2, memberId);
@@ -136,6 +492,104 @@ public class MemberRepositoryV4_2 implements MemberRepository {
     }
 
 
+    /*
+     조회 후 계산한 값을 쓰는 대신 DB 에서 바로 더한다
+     - 잔액 조건을 where 절에 넣고, 영향 받은 row 수로 성공 여부를 판단한다
+     */
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, delta);
+            int effectedRow = pstmt.executeUpdate(); // 0 이면 잔액 부족이거나 회원이 없는 것
+
+            return effectedRow == 1;
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("ADDMONEY EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
+    // 조회와 동시에 row lock 을 건다 - 트랜젝션 안에서 호출해야 의미가 있다
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+
+        String sql = "select * from member where member_id = ? for update";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+            pstmt.setString(1, memberId);
+
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                return member;
+            } else {
+                throw new NoSuchElementException("member not found memberId = " + memberId);
+            }
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("FINDBYIDFORUPDATE EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, rs);
+        }
+    }
+
+
+    /*
+     Compare-And-Set update
+     - 읽었을 때의 version 과 지금 version 이 같을 때만 바꾸고 version 을 올린다
+     - 영향 받은 row 가 0 이면 그 사이에 다른 Tx 가 먼저 바꾼 것 (또는 회원이 없는 것)
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+
+        String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+
+        Connection con = null;
+        PreparedStatement pstmt = null;
+
+        try {
+
+            con = getConnection();
+            pstmt = statementCache.prepareStatement(con, sql);
+
+            pstmt.setInt(1, updateMoney);
+            pstmt.setString(2, memberId);
+            pstmt.setLong(3, expectedVersion);
+
+            return pstmt.executeUpdate() == 1;
+
+        } catch (SQLException e) {
+            throw exceptionTranslator.translate("UPDATEIFVERSION EXCEPTION OCCUR", sql, e);
+        } finally {
+            close(con, pstmt, null);
+        }
+    }
+
     // 삭제
     public void delete(String memberId) {
 
@@ -147,7 +601,7 @@ public class MemberRepositoryV4_2 implements MemberRepository {
         try {
 
             con = getConnection();
-            pstmt = con.prepareStatement(sql);
+            pstmt = statementCache.prepareStatement(con, sql);
 
             pstmt.setString(1, memberId);
             int effectedRow = pstmt.executeUpdate(); // 역시 1을 반환
@@ -8,10 +8,18 @@ import org.springframework.jdbc.support.JdbcUtils;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
 import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+import springdb.jdbc_study.repository.support.VarcharArraySetter;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 /*
  JDBCTemplate 찍먹
@@ -23,10 +31,21 @@ import java.util.NoSuchElementException;
 @Slf4j
 public class MemberRepositoryV5 implements MemberRepository {
 
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     private final JdbcTemplate template;
+    private final int batchSize;
 
     public MemberRepositoryV5(DataSource dataSource) { // SQLException 은 직접 구현체로 넣어줍니다 // 그냥 SQL 측면에서만 일단 살펴보는거다
+        this(dataSource, DEFAULT_BATCH_SIZE);
+    }
+
+    public MemberRepositoryV5(DataSource dataSource, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive = " + batchSize);
+        }
         this.template = new JdbcTemplate(dataSource);
+        this.batchSize = batchSize;
     }
 
 
@@ -48,6 +67,33 @@ public class MemberRepositoryV5 implements MemberRepository {
 
     }
 
+    // batchSize 단위로 나눠서 executeBatch 하는 것까지 Template 이 해준다 (예외 변환도 동일)
+    @Override
+    public void saveAll(Collection<Member> members) {
+
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        template.batchUpdate(sql, members, batchSize, (ps, member) -> {
+            ps.setString(1, member.getMemberId());
+            ps.setInt(2, member.getMoney());
+        });
+    }
+
+    // V4_2 와 같은 MERGE 한 문장 - 예외 변환은 Template 이 해준다
+    @Override
+    public Member upsert(Member member) {
+        template.update(MemberRepositoryV4_2.UPSERT_SQL, member.getMemberId(), member.getMoney());
+        return member;
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        template.batchUpdate(MemberRepositoryV4_2.UPSERT_SQL, members, batchSize, (ps, member) -> {
+            ps.setString(1, member.getMemberId());
+            ps.setInt(2, member.getMoney());
+        });
+    }
+
     public Member findById(String memberId) {
 
         String sql = "select * from member where member_id = ? ";
@@ -55,12 +101,76 @@ public class MemberRepositoryV5 implements MemberRepository {
     }
 
 
+    // queryForObject 는 없으면 예외 - 목록으로 받아서 비어있으면 Optional.empty()
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+
+        String sql = "select * from member where member_id = ? ";
+        return template.query(sql, memberRowMapper(), memberId).stream().findFirst();
+    }
+
+
+    // V4_2 와 같이 배열 파라미터 하나로 묶어서 조회하고, batchSize 단위로 자른다
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+
+        String sql = "select * from member where member_id = any(?)";
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
+        List<Member> members = new ArrayList<>(ids.size());
+
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            Object[] chunk = ids.subList(from, Math.min(from + batchSize, ids.size())).toArray();
+
+            members.addAll(template.query(sql, new VarcharArraySetter(chunk), memberRowMapper())); // 배열은 조회가 끝나면 free
+        }
+
+        return members;
+    }
+
+
+    // 자원 해제는 Stream 을 close 할 때 Template 이 해준다
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+
+        String sql = "select * from member";
+
+        return template.queryForStream(con -> {
+            PreparedStatement pstmt = con.prepareStatement(sql);
+            pstmt.setFetchSize(fetchSize);
+            return pstmt;
+        }, memberRowMapper());
+    }
+
+
+    // limit + 1 개를 읽어서 다음 페이지가 있는지 판단한다
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("limit must be positive = " + limit);
+        }
+
+        List<Member> members = lastMemberId == null
+                ? template.query("select * from member order by member_id limit ?", memberRowMapper(), limit + 1)
+                : template.query("select * from member where member_id > ? order by member_id limit ?", memberRowMapper(), lastMemberId, limit + 1);
+
+        if (members.size() <= limit) {
+            return new MemberPage(members, null);
+        }
+
+        members.remove(limit);
+        return new MemberPage(members, members.get(limit - 1).getMemberId());
+    }
+
+
     /* Entity Mapping 을 직접 한다 - ORM 이 얼마나 대단한지 알 수 있는 부분 */
     private RowMapper<Member> memberRowMapper() {
         return (rs, rowNum) -> {
             Member member = new Member(); // 결과를 반환한 PSTMT 를 Member 로 묶어준다.
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
@@ -68,13 +178,40 @@ public class MemberRepositoryV5 implements MemberRepository {
 
     public void update(String memberId, int updateMoney) {
 
-        String sql = "update member set money = ? where member_id = ?";
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
         int update = template.update(sql, updateMoney, memberId); // 순서대로!
 
     }
 
 
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money + ? >= 0";
+
+        return template.update(sql, delta, memberId, delta) == 1; // 0 이면 잔액 부족이거나 회원이 없는 것
+    }
+
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+
+        String sql = "select * from member where member_id = ? for update";
+        return template.queryForObject(sql, memberRowMapper(), memberId);
+    }
+
+
+    // 0 이면 version 이 바뀐 것 - 다른 Tx 가 먼저 update 했다
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+
+        String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+
+        return template.update(sql, updateMoney, memberId, expectedVersion) == 1;
+    }
+
+
     // 삭제
     public void delete(String memberId) {
 
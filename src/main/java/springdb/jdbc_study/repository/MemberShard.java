@@ -0,0 +1,38 @@
+package springdb.jdbc_study.repository;
+
+import lombok.Getter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+/*
+ 샤드 하나 = DataSource 하나 + 그 DataSource 전용 TxManager + Repository
+ - 트랜젝션은 샤드 안에서만 묶인다 (샤드를 넘는 트랜젝션은 없다)
+ */
+@Getter
+public class MemberShard {
+
+    private final String name;
+    private final DataSource dataSource;
+    private final PlatformTransactionManager transactionManager;
+    private final TransactionTemplate txTemplate;
+    private final JdbcTemplate template;
+    private final MemberRepository repository;
+
+    public MemberShard(String name, DataSource dataSource) {
+        this.name = name;
+        this.dataSource = dataSource;
+        this.transactionManager = new DataSourceTransactionManager(dataSource);
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.template = new JdbcTemplate(dataSource);
+        this.repository = new MemberRepositoryV4_2(dataSource);
+    }
+
+    @Override
+    public String toString() {
+        return "MemberShard(" + name + ")";
+    }
+}
@@ -0,0 +1,60 @@
+package springdb.jdbc_study.repository;
+
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.connection.ReadWriteRoutingDataSource;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+ 트랜젝션 밖에서 하는 조회를 Replica 로 보내는 데코레이터
+ - 감싼 Repository 는 ReadWriteRoutingDataSource (lazyProxy) 를 DataSource 로 써야 한다
+ - 트랜젝션 안이라면 이미 그 트랜젝션 Connection 을 쓰므로 그대로 둔다 (쓰기 트랜젝션의 조회는 Primary)
+ - findByIdForUpdate 와 쓰기는 항상 Primary
+ */
+public class ReplicaReadMemberRepository extends ForwardingMemberRepository {
+
+    private final ReadWriteRoutingDataSource routingDataSource;
+
+    public ReplicaReadMemberRepository(MemberRepository delegate, ReadWriteRoutingDataSource routingDataSource) {
+        super(delegate);
+        this.routingDataSource = routingDataSource;
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return read(() -> delegate.findById(memberId));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return read(() -> delegate.findOptionalById(memberId));
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        return read(() -> delegate.findAllById(memberIds));
+    }
+
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+        return read(() -> delegate.findAll(fetchSize)); // Connection 은 Stream 을 돌려주기 전에 얻는다
+    }
+
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+        return read(() -> delegate.findPageAfter(lastMemberId, limit));
+    }
+
+    private <T> T read(Supplier<T> work) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+        return routingDataSource.readOnly(work);
+    }
+}
@@ -0,0 +1,144 @@
+package springdb.jdbc_study.repository;
+
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/*
+ memberId 의 hash 로 샤드 (DataSource) 를 골라서 보내는 Repository
+ - 회원 한명에 대한 작업은 그 회원의 샤드 Repository 로 그대로 위임
+ - 여러 회원에 대한 작업 (saveAll / findAllById) 은 샤드별로 묶어서 샤드마다 한번씩
+ - 트랜젝션은 샤드 단위 - 트랜젝션 안에서 쓰려면 그 샤드의 TxManager 로 열어야 한다 (getShards / shardOf)
+ - 샤드를 넘나드는 이체는 ShardedTransferService 가 맡는다
+ - 샤드 수를 바꾸면 회원이 다른 샤드로 가므로, 바꾸려면 데이터를 옮겨야 한다
+ */
+public class ShardedMemberRepository implements MemberRepository {
+
+    private final List<MemberShard> shards;
+
+    public ShardedMemberRepository(List<MemberShard> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("at least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+    }
+
+    public MemberShard shardOf(String memberId) {
+        return shards.get(Math.floorMod(memberId.hashCode(), shards.size()));
+    }
+
+    public List<MemberShard> getShards() {
+        return shards;
+    }
+
+    @Override
+    public Member save(Member member) {
+        return repositoryOf(member.getMemberId()).save(member);
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        Map<MemberShard, List<Member>> byShard = new LinkedHashMap<>();
+        members.forEach(member -> byShard.computeIfAbsent(shardOf(member.getMemberId()), shard -> new ArrayList<>()).add(member));
+        byShard.forEach((shard, shardMembers) -> shard.getRepository().saveAll(shardMembers));
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        return repositoryOf(member.getMemberId()).upsert(member);
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        Map<MemberShard, List<Member>> byShard = new LinkedHashMap<>();
+        members.forEach(member -> byShard.computeIfAbsent(shardOf(member.getMemberId()), shard -> new ArrayList<>()).add(member));
+        byShard.forEach((shard, shardMembers) -> shard.getRepository().upsertAll(shardMembers));
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return repositoryOf(memberId).findById(memberId);
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return repositoryOf(memberId).findOptionalById(memberId);
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        Map<MemberShard, List<String>> byShard = new LinkedHashMap<>();
+        memberIds.forEach(memberId -> byShard.computeIfAbsent(shardOf(memberId), shard -> new ArrayList<>()).add(memberId));
+
+        List<Member> members = new ArrayList<>(memberIds.size());
+        byShard.forEach((shard, ids) -> members.addAll(shard.getRepository().findAllById(ids)));
+        return members;
+    }
+
+    // 샤드를 차례로 읽는다 - 샤드 Stream 은 다 읽으면 닫힌다
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+        return shards.stream().flatMap(shard -> shard.getRepository().findAll(fetchSize));
+    }
+
+    /*
+     샤드마다 limit 개씩 읽어서 member_id 순으로 합친 다음 앞의 limit 개만 남긴다
+     - 어느 샤드든 남은 게 있으면 다음 페이지가 있다
+     */
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+
+        List<Member> merged = new ArrayList<>();
+        boolean hasMore = false;
+        for (MemberShard shard : shards) {
+            MemberPage page = shard.getRepository().findPageAfter(lastMemberId, limit);
+            merged.addAll(page.getMembers());
+            hasMore |= page.hasNext();
+        }
+        merged.sort(Comparator.comparing(Member::getMemberId));
+
+        if (merged.size() > limit) {
+            merged = new ArrayList<>(merged.subList(0, limit));
+            hasMore = true;
+        }
+        String nextCursor = hasMore && !merged.isEmpty() ? merged.get(merged.size() - 1).getMemberId() : null;
+        return new MemberPage(merged, nextCursor);
+    }
+
+    @Override
+    public void update(String memberId, int updateMoney) {
+        repositoryOf(memberId).update(memberId, updateMoney);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        return repositoryOf(memberId).addMoney(memberId, delta);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return repositoryOf(memberId).findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        return repositoryOf(memberId).updateIfVersion(memberId, updateMoney, expectedVersion);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        repositoryOf(memberId).delete(memberId);
+    }
+
+    private MemberRepository repositoryOf(String memberId) {
+        return shardOf(memberId).getRepository();
+    }
+}
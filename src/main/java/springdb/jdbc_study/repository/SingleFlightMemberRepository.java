@@ -0,0 +1,157 @@
+package springdb.jdbc_study.repository;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import springdb.jdbc_study.domain.Member;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ 같은 회원을 동시에 findById 하면 DB 조회 하나를 같이 기다리게 하는 데코레이터 (Single-Flight)
+ - 먼저 온 쓰레드 (leader) 만 Connection 을 얻어 조회하고, 그 사이에 온 쓰레드는 그 결과를 나눠 받는다
+ - 캐시가 아니다 - 조회가 끝나면 바로 잊어버리므로 그 뒤에 온 조회는 다시 DB 로 간다
+ - 트랜젝션 안의 조회는 그 트랜젝션이 보는 값이 달라야 하므로 (격리수준 / 자기가 쓴 값) 합치지 않는다
+ - 이 Repository 로 쓴 회원은 진행 중인 조회에서 떼어낸다 (트랜젝션이면 commit 이후)
+   > 쓰기가 끝난 다음 시작한 조회가, 쓰기 전에 시작한 조회 결과를 받는 일이 없도록
+ - Member 는 setter 가 있으므로 같이 기다린 쓰레드에게는 복사본을 준다
+ */
+public class SingleFlightMemberRepository extends ForwardingMemberRepository {
+
+    private final ConcurrentMap<String, CompletableFuture<Member>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder callCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    public SingleFlightMemberRepository(MemberRepository delegate) {
+        super(delegate);
+    }
+
+    @Override
+    public Member findById(String memberId) {
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return delegate.findById(memberId);
+        }
+
+        callCount.increment();
+        CompletableFuture<Member> flight = new CompletableFuture<>();
+        CompletableFuture<Member> existing = inFlight.putIfAbsent(memberId, flight);
+
+        if (existing != null) {
+            coalescedCount.increment();
+            return copyOf(await(existing));
+        }
+
+        try {
+            Member member = delegate.findById(memberId);
+            flight.complete(copyOf(member)); // 호출자가 받은 객체를 바꿔도 기다리던 쪽에 보이지 않도록
+            return member;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(memberId, flight);
+        }
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = delegate.save(member);
+        forgetAfterCommit(member.getMemberId());
+        return saved;
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        delegate.saveAll(members);
+        members.forEach(member -> forgetAfterCommit(member.getMemberId()));
+    }
+
+    @Override
+    public Member upsert(Member member) {
+        Member upserted = delegate.upsert(member);
+        forgetAfterCommit(member.getMemberId());
+        return upserted;
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        delegate.upsertAll(members);
+        members.forEach(member -> forgetAfterCommit(member.getMemberId()));
+    }
+
+    @Override
+    public void update(String memberId, int updateMoney) {
+        delegate.update(memberId, updateMoney);
+        forgetAfterCommit(memberId);
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+        boolean updated = delegate.addMoney(memberId, delta);
+        forgetAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        boolean updated = delegate.updateIfVersion(memberId, updateMoney, expectedVersion);
+        forgetAfterCommit(memberId);
+        return updated;
+    }
+
+    @Override
+    public void delete(String memberId) {
+        delegate.delete(memberId);
+        forgetAfterCommit(memberId);
+    }
+
+    public long getCallCount() {
+        return callCount.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.sum();
+    }
+
+    // 트랜젝션 밖 findById 중 다른 조회에 합쳐진 비율 (0 ~ 1)
+    public double getCoalescingRatio() {
+        long calls = getCallCount();
+        return calls == 0 ? 0.0 : (double) getCoalescedCount() / calls;
+    }
+
+    // leader 는 자기 future 로 map 에서 지우므로 (remove(key, value)), 떼어낸 뒤 끝나도 새 flight 를 지우지 않는다
+    private void forgetAfterCommit(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            inFlight.remove(memberId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                inFlight.remove(memberId);
+            }
+        });
+    }
+
+    private static Member await(CompletableFuture<Member> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Member copyOf(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
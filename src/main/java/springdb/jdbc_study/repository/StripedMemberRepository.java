@@ -0,0 +1,306 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+import springdb.jdbc_study.repository.support.VarcharArraySetter;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/*
+ 잔액을 stripes 개의 row 로 나눠 담는 데코레이터 (member_stripe 테이블)
+ - 입금이 몰리는 회원 (가맹점 계좌 등) 은 입금마다 같은 row lock 을 잡으므로 직렬화된다
+   > 입금은 무작위 stripe 하나에만 더한다 - stripes 개의 입금이 동시에 진행될 수 있다
+   > 출금은 무작위 stripe 하나에서 먼저 빼보고, 모자라면 모든 stripe 를 순서대로 lock 잡고 나눠서 뺀다
+   > 조회는 모든 stripe 의 합
+ - 회원 row (member 테이블) 는 감싼 Repository 가 그대로 관리하고, 그쪽 money 는 항상 0 으로 둔다
+ - version = 회원 row version + 모든 stripe version 의 합
+   > 입출금은 건드린 stripe 의 version 만 올린다 (회원 row lock 없음) - 그래도 합이 바뀌므로 updateIfVersion 이 알아챈다
+   > 각 항은 늘기만 하므로 합이 같으면 아무것도 바뀌지 않은 것
+ - stripe 수는 회원을 만들 때 정해진다 - 같은 테이블에는 같은 stripes 로만 접근해야 한다
+ - MemberServiceV4 는 바꿀 필요 없음 (MemberRepository 뒤에 숨는다)
+ */
+@Slf4j
+public class StripedMemberRepository extends ForwardingMemberRepository {
+
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate; // 이미 트랜젝션 중이면 참여 (REQUIRED)
+    private final int stripes;
+
+    public StripedMemberRepository(MemberRepository delegate, DataSource dataSource, int stripes) {
+        super(delegate);
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive = " + stripes);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.stripes = stripes;
+    }
+
+    // 처음 잔액은 stripe 들에 고르게 나눠 넣는다 (나머지는 0번) - 출금이 빠른 길을 타기 쉽도록
+    @Override
+    public Member save(Member member) {
+        txTemplate.executeWithoutResult(status -> {
+            delegate.save(new Member(member.getMemberId(), 0));
+            insertStripes(List.of(member));
+        });
+        return member;
+    }
+
+    @Override
+    public void saveAll(Collection<Member> members) {
+        List<Member> zeroMoney = new ArrayList<>(members.size());
+        members.forEach(member -> zeroMoney.add(new Member(member.getMemberId(), 0)));
+
+        txTemplate.executeWithoutResult(status -> {
+            delegate.saveAll(zeroMoney);
+            insertStripes(members);
+        });
+    }
+
+    // 회원 row 는 감싼 Repository 의 upsert 로 (money 0), stripe 들은 save 와 같이 고르게 나눠서 덮어쓴다
+    @Override
+    public Member upsert(Member member) {
+        txTemplate.executeWithoutResult(status -> {
+            delegate.upsert(new Member(member.getMemberId(), 0));
+            mergeStripes(List.of(member));
+        });
+        return member;
+    }
+
+    @Override
+    public void upsertAll(Collection<Member> members) {
+        List<Member> zeroMoney = new ArrayList<>(members.size());
+        members.forEach(member -> zeroMoney.add(new Member(member.getMemberId(), 0)));
+
+        txTemplate.executeWithoutResult(status -> {
+            delegate.upsertAll(zeroMoney);
+            mergeStripes(members);
+        });
+    }
+
+    @Override
+    public Member findById(String memberId) {
+        return withStripes(delegate.findById(memberId));
+    }
+
+    @Override
+    public Optional<Member> findOptionalById(String memberId) {
+        return delegate.findOptionalById(memberId).map(this::withStripes);
+    }
+
+    @Override
+    public List<Member> findAllById(Collection<String> memberIds) {
+        return withBalances(delegate.findAllById(memberIds));
+    }
+
+    // 회원마다 합계 조회가 한번씩 더 나간다
+    @Override
+    public Stream<Member> findAll(int fetchSize) {
+        return delegate.findAll(fetchSize).map(this::withStripes);
+    }
+
+    @Override
+    public MemberPage findPageAfter(String lastMemberId, int limit) {
+        MemberPage page = delegate.findPageAfter(lastMemberId, limit);
+        return new MemberPage(withBalances(page.getMembers()), page.getNextCursor());
+    }
+
+    // 회원 row 와 모든 stripe 에 lock 을 잡는다 (stripe 순서대로)
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        Member member = delegate.findByIdForUpdate(memberId);
+        LockedStripes locked = lockStripes(memberId);
+        member.setMoney(locked.total());
+        member.setVersion(member.getVersion() + locked.version);
+        return member;
+    }
+
+    // 절대값 update - save 와 같이 고르게 나눠서 덮어쓴다 (version 은 회원 row 에서 올린다)
+    @Override
+    public void update(String memberId, int updateMoney) {
+        txTemplate.executeWithoutResult(status -> {
+            delegate.update(memberId, 0);
+            template.update("update member_stripe set money = case when stripe = 0 then ? else ? end where member_id = ?",
+                    shareOf(updateMoney, 0), shareOf(updateMoney, 1), memberId);
+        });
+    }
+
+    @Override
+    public boolean addMoney(String memberId, int delta) {
+
+        int stripe = ThreadLocalRandom.current().nextInt(stripes);
+
+        if (delta >= 0) {
+            return template.update("update member_stripe set money = money + ?, version = version + 1 where member_id = ? and stripe = ?",
+                    delta, memberId, stripe) == 1;
+        }
+
+        // 빠른 길 - 무작위 stripe 하나로 충분하면 그 row 만 건드린다
+        int drawn = template.update("update member_stripe set money = money + ?, version = version + 1 where member_id = ? and stripe = ? and money + ? >= 0",
+                delta, memberId, stripe, delta);
+        if (drawn == 1) {
+            return true;
+        }
+
+        Boolean drained = txTemplate.execute(status -> drain(memberId, -delta));
+        return Boolean.TRUE.equals(drained);
+    }
+
+    /*
+     낙관적 락 - 회원 row 와 모든 stripe 를 lock 잡고 (findByIdForUpdate 와 같은 순서), 합친 version 이 같을 때만 덮어쓴다
+     - 읽은 뒤 들어온 입출금은 stripe version 을 올렸으므로 여기서 걸린다 - 덮어써서 잃어버리지 않는다
+     - 맞으면 update 와 같이 stripe 들을 고르게 나눠서 덮어쓰고, 회원 row version 을 올린다
+     */
+    @Override
+    public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+        Boolean updated = txTemplate.execute(status -> {
+            if (delegate.findOptionalById(memberId).isEmpty()) {
+                return false; // 없는 회원
+            }
+            Member locked = findByIdForUpdate(memberId);
+            if (locked.getVersion() != expectedVersion) {
+                return false;
+            }
+            delegate.update(memberId, 0);
+            template.update("update member_stripe set money = case when stripe = 0 then ? else ? end where member_id = ?",
+                    shareOf(updateMoney, 0), shareOf(updateMoney, 1), memberId);
+            return true;
+        });
+        return Boolean.TRUE.equals(updated);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        txTemplate.executeWithoutResult(status -> {
+            template.update("delete from member_stripe where member_id = ?", memberId);
+            delegate.delete(memberId);
+        });
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    // 모든 stripe 를 stripe 순서대로 lock 잡고, 합이 충분하면 앞에서부터 빼낸다
+    private boolean drain(String memberId, int amount) {
+
+        int[] balances = lockStripes(memberId).balances;
+        int total = 0;
+        for (int money : balances) {
+            total += money;
+        }
+        if (balances.length == 0 || total < amount) {
+            return false; // 잔액 부족 또는 회원 없음
+        }
+
+        int remaining = amount;
+        for (int stripe = 0; stripe < balances.length && remaining > 0; stripe++) {
+            int take = Math.min(balances[stripe], remaining);
+            if (take > 0) {
+                template.update("update member_stripe set money = money - ?, version = version + 1 where member_id = ? and stripe = ?",
+                        take, memberId, stripe);
+                remaining -= take;
+            }
+        }
+        return true;
+    }
+
+    private LockedStripes lockStripes(String memberId) {
+        List<long[]> rows = template.query("select money, version from member_stripe where member_id = ? order by stripe for update",
+                (rs, rowNum) -> new long[]{rs.getInt("money"), rs.getLong("version")}, memberId);
+        int[] balances = new int[rows.size()];
+        long version = 0;
+        for (int stripe = 0; stripe < balances.length; stripe++) {
+            balances[stripe] = (int) rows.get(stripe)[0];
+            version += rows.get(stripe)[1];
+        }
+        return new LockedStripes(balances, version);
+    }
+
+    // 합계와 version 합을 한 SQL 로 읽는다 - 둘이 서로 다른 시점이 되지 않도록
+    private Member withStripes(Member member) {
+        template.query("select coalesce(sum(money), 0) as money, coalesce(sum(version), 0) as version from member_stripe where member_id = ?",
+                rs -> {
+                    member.setMoney(rs.getInt("money"));
+                    member.setVersion(member.getVersion() + rs.getLong("version"));
+                }, member.getMemberId());
+        return member;
+    }
+
+    // 합계는 회원들을 묶어서 한번에 조회한다
+    private List<Member> withBalances(List<Member> members) {
+        if (members.isEmpty()) {
+            return members;
+        }
+
+        Object[] ids = members.stream().map(Member::getMemberId).toArray();
+        Map<String, Integer> sums = new HashMap<>();
+        Map<String, Long> versions = new HashMap<>();
+        String sql = "select member_id, sum(money) as money, sum(version) as version from member_stripe where member_id = any(?) group by member_id";
+        template.query(sql, new VarcharArraySetter(ids), rs -> {
+            sums.put(rs.getString("member_id"), rs.getInt("money"));
+            versions.put(rs.getString("member_id"), rs.getLong("version"));
+        });
+
+        members.forEach(member -> {
+            member.setMoney(sums.getOrDefault(member.getMemberId(), 0));
+            member.setVersion(member.getVersion() + versions.getOrDefault(member.getMemberId(), 0L));
+        });
+        return members;
+    }
+
+    private int shareOf(int money, int stripe) {
+        int share = money / stripes;
+        return stripe == 0 ? share + money % stripes : share;
+    }
+
+    private void insertStripes(Collection<Member> members) {
+        template.batchUpdate("insert into member_stripe(member_id, stripe, money) values (?, ?, ?)", stripeRows(members));
+    }
+
+    // stripe row 는 version 이 없으므로 KEY 형식 MERGE 로 충분하다
+    private void mergeStripes(Collection<Member> members) {
+        template.batchUpdate("merge into member_stripe(member_id, stripe, money) key(member_id, stripe) values (?, ?, ?)", stripeRows(members));
+    }
+
+    private List<Object[]> stripeRows(Collection<Member> members) {
+        List<Object[]> rows = new ArrayList<>(members.size() * stripes);
+        for (Member member : members) {
+            for (int stripe = 0; stripe < stripes; stripe++) {
+                rows.add(new Object[]{member.getMemberId(), stripe, shareOf(member.getMoney(), stripe)});
+            }
+        }
+        return rows;
+    }
+
+    private static class LockedStripes {
+
+        private final int[] balances; // stripe 순서
+        private final long version;   // stripe version 의 합
+
+        LockedStripes(int[] balances, long version) {
+            this.balances = balances;
+            this.version = version;
+        }
+
+        int total() {
+            int total = 0;
+            for (int money : balances) {
+                total += money;
+            }
+            return total;
+        }
+    }
+}
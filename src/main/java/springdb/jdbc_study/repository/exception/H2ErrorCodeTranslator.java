@@ -0,0 +1,151 @@
+package springdb.jdbc_study.repository.exception;
+
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DeadlockLoserDataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+import org.springframework.jdbc.support.SQLStateSQLExceptionTranslator;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/*
+ H2 전용 예외 변환기 - ErrorCode (int) 를 미리 만든 표에서 바로 찾는다
+ - SQLErrorCodeSQLExceptionTranslator 는 DataSource 메타데이터로 DB 종류를 알아내고 (Connection 필요),
+   sql-error-codes.xml 의 코드 목록을 차례로 훑는다
+ - 여기서는 H2 코드를 정렬된 int[] 로 들고 이진 탐색 한번 - 박싱도, Connection 도 필요 없다
+ - 코드 목록은 Spring 의 sql-error-codes.xml 중 H2 항목과 같다
+ - 표에 없는 코드는 SQLState 로 변환 (SQLStateSQLExceptionTranslator)
+ - 기본은 stack trace 를 그대로 만든다
+ - stacklessControlFlow = true 면 "다시 시도하면 되는" 예외 (중복 키 / Lock 실패 / Deadlock) 는 stack trace 를 만들지 않는다
+   > 서비스에서 잡아서 복구하는 흐름 (ExceptionTranslatorV1Test 의 ID 재생성 같은) 에서는 stack trace 가 쓰이지 않는다
+   > 원인인 SQLException 은 cause 로 그대로 붙어있다
+ */
+public class H2ErrorCodeTranslator implements SQLExceptionTranslator {
+
+    enum Category {
+        DUPLICATE_KEY, DATA_INTEGRITY, BAD_SQL_GRAMMAR, DATA_ACCESS_RESOURCE_FAILURE,
+        CANNOT_ACQUIRE_LOCK, DEADLOCK_LOSER, QUERY_TIMEOUT
+    }
+
+    private static final int[] CODES;
+    private static final Category[] CATEGORIES;
+
+    static {
+        int[][] codesByCategory = new int[Category.values().length][];
+        codesByCategory[Category.DUPLICATE_KEY.ordinal()] = new int[]{23001, 23505};
+        codesByCategory[Category.DATA_INTEGRITY.ordinal()] = new int[]{22001, 22003, 22012, 22018, 22025, 23000, 23002, 23003, 23502, 23503, 23506, 23507, 23513};
+        codesByCategory[Category.BAD_SQL_GRAMMAR.ordinal()] = new int[]{42000, 42001, 42101, 42102, 42111, 42112, 42121, 42122, 42132};
+        codesByCategory[Category.DATA_ACCESS_RESOURCE_FAILURE.ordinal()] = new int[]{90046, 90100, 90117, 90121, 90126};
+        codesByCategory[Category.CANNOT_ACQUIRE_LOCK.ordinal()] = new int[]{50200};
+        codesByCategory[Category.DEADLOCK_LOSER.ordinal()] = new int[]{40001};
+        codesByCategory[Category.QUERY_TIMEOUT.ordinal()] = new int[]{57014};
+
+        long[] packed = new long[Arrays.stream(codesByCategory).mapToInt(codes -> codes.length).sum()];
+        int index = 0;
+        for (Category category : Category.values()) {
+            for (int code : codesByCategory[category.ordinal()]) {
+                packed[index++] = ((long) code << 8) | category.ordinal(); // 코드 순으로 정렬하면 분류가 같이 따라온다
+            }
+        }
+        Arrays.sort(packed);
+
+        CODES = new int[packed.length];
+        CATEGORIES = new Category[packed.length];
+        for (int i = 0; i < packed.length; i++) {
+            CODES[i] = (int) (packed[i] >>> 8);
+            CATEGORIES[i] = Category.values()[(int) (packed[i] & 0xff)];
+        }
+    }
+
+    private final boolean stacklessControlFlow;
+    private final SQLExceptionTranslator fallback = new SQLStateSQLExceptionTranslator();
+
+    public H2ErrorCodeTranslator() {
+        this(false);
+    }
+
+    public H2ErrorCodeTranslator(boolean stacklessControlFlow) {
+        this.stacklessControlFlow = stacklessControlFlow;
+    }
+
+    @Override
+    public DataAccessException translate(String task, String sql, SQLException ex) {
+
+        Category category = categoryOf(ex.getErrorCode());
+        if (category == null) {
+            return fallback.translate(task, sql, ex);
+        }
+
+        String message = task + "; SQL [" + sql + "]; " + ex.getMessage();
+        switch (category) {
+            case DUPLICATE_KEY:
+                return stacklessControlFlow ? new StacklessDuplicateKeyException(message, ex) : new DuplicateKeyException(message, ex);
+            case CANNOT_ACQUIRE_LOCK:
+                return stacklessControlFlow ? new StacklessCannotAcquireLockException(message, ex) : new CannotAcquireLockException(message, ex);
+            case DEADLOCK_LOSER:
+                return stacklessControlFlow ? new StacklessDeadlockLoserException(message, ex) : new DeadlockLoserDataAccessException(message, ex);
+            case DATA_INTEGRITY:
+                return new DataIntegrityViolationException(message, ex);
+            case BAD_SQL_GRAMMAR:
+                return new BadSqlGrammarException(task, sql, ex);
+            case DATA_ACCESS_RESOURCE_FAILURE:
+                return new DataAccessResourceFailureException(message, ex);
+            case QUERY_TIMEOUT:
+                return new QueryTimeoutException(message, ex);
+            default:
+                return fallback.translate(task, sql, ex);
+        }
+    }
+
+    // 표에 없으면 null
+    static Category categoryOf(int errorCode) {
+        int index = Arrays.binarySearch(CODES, errorCode);
+        return index < 0 ? null : CATEGORIES[index];
+    }
+
+    /*
+     stack trace 없는 변형 - Throwable 생성자가 부르는 fillInStackTrace 를 막는다
+     - 타입은 그대로 하위 클래스라 catch (DuplicateKeyException e) 같은 기존 코드는 바뀌지 않는다
+     */
+    static class StacklessDuplicateKeyException extends DuplicateKeyException {
+
+        StacklessDuplicateKeyException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    static class StacklessCannotAcquireLockException extends CannotAcquireLockException {
+
+        StacklessCannotAcquireLockException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    static class StacklessDeadlockLoserException extends DeadlockLoserDataAccessException {
+
+        StacklessDeadlockLoserException(String message, Throwable cause) {
+            super(message, cause);
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package springdb.jdbc_study.repository.support;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ hi/lo (pooled) 방식 회원 ID 발급기
+ - DB 시퀀스 (member_id_block_seq) 는 SEQUENCE_INCREMENT 씩 올라간다 - 받은 값 hi 부터 [hi, hi + SEQUENCE_INCREMENT) 가 이 발급기 몫
+   > 시퀀스는 트랜젝션과 상관없이 한번 준 값을 다시 주지 않으므로, 여러 서버 / 재시작에도 ID 가 겹치지 않는다
+   > 범위의 크기는 시퀀스가 정한다 - hi * blockSize 처럼 발급기마다 곱하면 blockSize 가 다른 발급기끼리 범위가 겹친다
+   > blockSize 는 그 범위 중 앞에서 몇개를 쓸지 (SEQUENCE_INCREMENT 이하) - 작게 잡으면 나머지는 버려진다
+ - 예약한 블록 안에서는 AtomicLong 증가만으로 나눠준다 (lock 없음) - 블록이 바닥날 때만 한 쓰레드가 시퀀스를 부른다
+ - ID = prefix + 36진수 - member_id 가 varchar(10) 이므로 넘치면 예외
+ - 재시작하면 쓰다 남은 블록은 버려진다 (ID 에 구멍이 생길 뿐 겹치지는 않는다)
+ */
+public class MemberIdAllocator {
+
+    public static final int SEQUENCE_INCREMENT = 1000; // schema.sql 의 member_id_block_seq increment by 와 같아야 한다
+    public static final int DEFAULT_BLOCK_SIZE = SEQUENCE_INCREMENT;
+    public static final int MAX_MEMBER_ID_LENGTH = 10;
+
+    private final JdbcTemplate template;
+    private final String prefix;
+    private final int blockSize;
+
+    private volatile Block block = new Block(0, 0); // 처음에는 빈 블록 - 첫 발급 때 채운다
+    private final LongAdder blockCount = new LongAdder();
+
+    public MemberIdAllocator(DataSource dataSource, String prefix) {
+        this(dataSource, prefix, DEFAULT_BLOCK_SIZE);
+    }
+
+    public MemberIdAllocator(DataSource dataSource, String prefix, int blockSize) {
+        if (blockSize <= 0 || blockSize > SEQUENCE_INCREMENT) {
+            throw new IllegalArgumentException("blockSize must be in [1, " + SEQUENCE_INCREMENT + "] = " + blockSize);
+        }
+        if (prefix.length() >= MAX_MEMBER_ID_LENGTH) {
+            throw new IllegalArgumentException("prefix too long = " + prefix);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.prefix = prefix;
+        this.blockSize = blockSize;
+    }
+
+    public String nextId() {
+        while (true) {
+            Block current = block;
+            long value = current.next.getAndIncrement();
+            if (value < current.end) {
+                return format(value);
+            }
+            refill(current);
+        }
+    }
+
+    // 시퀀스를 부른 횟수 (= DB 왕복 횟수)
+    public long getBlockCount() {
+        return blockCount.sum();
+    }
+
+    // 바닥난 블록을 본 쓰레드들 중 한 쓰레드만 채운다 - 나머지는 기다렸다가 새 블록에서 다시 꺼낸다
+    private synchronized void refill(Block exhausted) {
+        if (block != exhausted) {
+            return;
+        }
+        Long hi = template.queryForObject("select next value for member_id_block_seq", Long.class);
+        if (hi == null) {
+            throw new IllegalStateException("member_id_block_seq returned null");
+        }
+        block = new Block(hi, hi + blockSize);
+        blockCount.increment();
+    }
+
+    private String format(long value) {
+        String memberId = prefix + Long.toString(value, Character.MAX_RADIX);
+        if (memberId.length() > MAX_MEMBER_ID_LENGTH) {
+            throw new IllegalStateException("member id exceeds " + MAX_MEMBER_ID_LENGTH + " chars = " + memberId);
+        }
+        return memberId;
+    }
+
+    private static class Block {
+
+        private final AtomicLong next;
+        private final long end; // 이 값은 포함하지 않는다
+
+        Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
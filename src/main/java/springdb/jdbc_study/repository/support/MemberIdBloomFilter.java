@@ -0,0 +1,92 @@
+package springdb.jdbc_study.repository.support;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ 회원 ID Bloom Filter - "확실히 없음" 을 DB 에 가지 않고 알려준다
+ - mightContain 이 false 면 한번도 put 한 적 없는 ID (틀리지 않는다)
+ - true 면 있을 수도 있음 - falsePositiveRate 정도의 확률로 없는 ID 도 true
+ - 비트 수 m = -n ln p / (ln 2)^2, 해시 수 k = m / n ln 2 (n = expectedInsertions, p = falsePositiveRate)
+ - 해시 k 개는 64bit 해시 하나를 둘로 나눠 h1 + i * h2 로 만든다 (Kirsch-Mitzenmacher)
+ - 비트는 AtomicLongArray 라 여러 쓰레드가 lock 없이 put / mightContain 할 수 있다
+ - 지울 수는 없다 (비트를 다른 ID 와 같이 쓰므로) - 지워진 ID 는 계속 "있을 수도 있음" 으로 남는다
+ */
+public class MemberIdBloomFilter {
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashCount;
+
+    public MemberIdBloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("expectedInsertions must be positive = " + expectedInsertions);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("falsePositiveRate must be in (0, 1) = " + falsePositiveRate);
+        }
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int wordCount = (int) Math.max(1, (bits + 63) / 64);
+        this.words = new AtomicLongArray(wordCount);
+        this.bitSize = wordCount * 64L;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(String memberId) {
+        long hash = hash64(memberId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitSize);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if ((words.get(word) & mask) == 0) {
+                words.getAndAccumulate(word, mask, (current, added) -> current | added);
+            }
+        }
+    }
+
+    public boolean mightContain(String memberId) {
+        long hash = hash64(memberId);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 지금 채워진 비트 비율로 계산한 오탐률 - 예상보다 많이 넣었거나 지운 ID 가 쌓이면 올라간다
+    public double expectedFalsePositiveRate() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++) {
+            setBits += Long.bitCount(words.get(i));
+        }
+        return Math.pow((double) setBits / bitSize, hashCount);
+    }
+
+    public long getBitSize() {
+        return bitSize;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    // FNV-1a 64 + murmur3 fmix64 - 짧은 ID 도 비트가 고르게 섞이도록
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
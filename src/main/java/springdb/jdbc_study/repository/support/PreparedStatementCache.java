@@ -0,0 +1,152 @@
+package springdb.jdbc_study.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ Connection + SQL 단위 PreparedStatement 캐시
+ - 트랜젝션 동기화로 같은 Connection 을 계속 쓰는 동안 (findById 2번, update 2번 ...) 같은 SQL 을 다시 파싱하지 않는다
+ - 트랜젝션 밖에서는 호출마다 Connection 이 반환되므로 캐시하지 않는다 (기존처럼 만들고 닫음)
+ - Connection 당 최대 개수를 넘으면 가장 오래 안 쓴 Statement 부터 닫는다 (LRU)
+ - 트랜젝션이 끝나서 DataSourceUtils 로 Connection 이 실제로 반환되기 전에 캐시된 Statement 를 모두 닫는다
+ */
+@Slf4j
+public class PreparedStatementCache {
+
+    public static final int DEFAULT_MAX_STATEMENTS_PER_CONNECTION = 32;
+
+    private final DataSource dataSource;
+    private final int maxStatementsPerConnection; // 0 이면 캐시를 사용하지 않는다
+    private final Map<Connection, Map<String, PreparedStatement>> statementsByConnection = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public PreparedStatementCache(DataSource dataSource) {
+        this(dataSource, DEFAULT_MAX_STATEMENTS_PER_CONNECTION);
+    }
+
+    public PreparedStatementCache(DataSource dataSource, int maxStatementsPerConnection) {
+        if (maxStatementsPerConnection < 0) {
+            throw new IllegalArgumentException("maxStatementsPerConnection must not be negative = " + maxStatementsPerConnection);
+        }
+        this.dataSource = dataSource;
+        this.maxStatementsPerConnection = maxStatementsPerConnection;
+    }
+
+    public PreparedStatement prepareStatement(Connection con, String sql) throws SQLException {
+
+        if (!isCacheable(con)) {
+            return con.prepareStatement(sql);
+        }
+
+        // 트랜젝션에 묶인 Connection 은 한 쓰레드에서만 사용되므로, 안쪽 Map 은 동기화가 필요 없다
+        Map<String, PreparedStatement> statements = statementsByConnection.get(con);
+        if (statements == null) {
+            statements = new LruStatements(maxStatementsPerConnection);
+            statementsByConnection.put(con, statements);
+            TransactionSynchronizationManager.registerSynchronization(new EvictOnCompletion(con));
+        }
+
+        PreparedStatement pstmt = statements.get(sql);
+        if (pstmt != null && !pstmt.isClosed()) {
+            hitCount.increment();
+            return pstmt;
+        }
+
+        missCount.increment();
+        pstmt = con.prepareStatement(sql);
+        statements.put(sql, pstmt);
+        return pstmt;
+    }
+
+    // 캐시된 Statement 는 열어두고 (트랜젝션 종료시 정리), 캐시 대상이 아니었던 것만 바로 닫는다
+    public void closeStatement(Connection con, Statement stmt) {
+        if (stmt == null) {
+            return;
+        }
+
+        Map<String, PreparedStatement> statements = con == null ? null : statementsByConnection.get(con);
+        if (statements == null || !statements.containsValue(stmt)) {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    private boolean isCacheable(Connection con) {
+        return maxStatementsPerConnection > 0
+                && TransactionSynchronizationManager.isSynchronizationActive()
+                && DataSourceUtils.isConnectionTransactional(con, dataSource);
+    }
+
+    private void evict(Connection con) {
+        Map<String, PreparedStatement> statements = statementsByConnection.remove(con);
+        if (statements != null) {
+            statements.values().forEach(JdbcUtils::closeStatement);
+            log.debug("evicted {} cached statements of connection = {}", statements.size(), con);
+        }
+    }
+
+    // accessOrder = true 인 LinkedHashMap 으로 LRU, 밀려나는 Statement 는 닫아준다
+    private static class LruStatements extends LinkedHashMap<String, PreparedStatement> {
+
+        private final int maxSize;
+
+        LruStatements(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() > maxSize) {
+                JdbcUtils.closeStatement(eldest.getValue());
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /*
+     트랜젝션 종료 (commit / rollback) 후 TxManager 가 Connection 을 반환하기 전에 호출된다
+     DataSourceUtils 가 등록하는 ConnectionSynchronization 보다 먼저 돌도록 순서를 앞당긴다
+     */
+    private class EvictOnCompletion implements TransactionSynchronization {
+
+        private final Connection con;
+
+        EvictOnCompletion(Connection con) {
+            this.con = con;
+        }
+
+        @Override
+        public int getOrder() {
+            return DataSourceUtils.CONNECTION_SYNCHRONIZATION_ORDER - 1;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            evict(con);
+        }
+    }
+}
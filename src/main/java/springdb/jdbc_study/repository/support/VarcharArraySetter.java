@@ -0,0 +1,46 @@
+package springdb.jdbc_study.repository.support;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ParameterDisposer;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/*
+ "= any(?)" 한 자리에 VARCHAR 배열을 넣는 JdbcTemplate 용 Setter
+ - createArrayOf 로 만든 java.sql.Array 는 드라이버 자원이라 free 해줘야 한다 (V4_2 는 finally 에서 직접 free)
+ - ParameterDisposer 를 구현하면 JdbcTemplate 이 조회가 끝난 뒤 (실패해도) cleanupParameters 를 불러준다
+ - 조회 한번에 하나씩 만들어 쓴다 (만든 Array 를 들고 있으므로 공유하지 않는다)
+ */
+@Slf4j
+public class VarcharArraySetter implements PreparedStatementSetter, ParameterDisposer {
+
+    private final Object[] values;
+    private Array array;
+
+    public VarcharArraySetter(Object[] values) {
+        this.values = values;
+    }
+
+    @Override
+    public void setValues(PreparedStatement pstmt) throws SQLException {
+        array = pstmt.getConnection().createArrayOf("VARCHAR", values);
+        pstmt.setArray(1, array);
+    }
+
+    @Override
+    public void cleanupParameters() {
+        if (array == null) {
+            return;
+        }
+        try {
+            array.free();
+        } catch (SQLException e) {
+            log.debug("Array free 실패", e);
+        } finally {
+            array = null;
+        }
+    }
+}
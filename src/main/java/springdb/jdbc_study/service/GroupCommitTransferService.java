@@ -0,0 +1,124 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.support.MicroBatcher;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ Group Commit - 여러 이체를 모아서 한 트랜젝션으로 commit 한다
+ - accountTransfer 는 이체마다 Connection 획득 + commit (로그 flush) 비용을 낸다
+ - submit 은 큐에 넣기만 하고 (MicroBatcher), flush 쓰레드가 maxBatchSize 개가 모이거나 maxDelay 가 지나면 한번에 처리한다
+ - 호출자는 CompletableFuture 로 받고, 자기 이체가 포함된 트랜젝션이 commit 되면 완료된다
+ - 이체 하나가 실패하면 (잔액 부족 등) 그 이체의 savepoint 로만 되돌리고 나머지는 계속 진행한다
+ */
+@Slf4j
+public class GroupCommitTransferService implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 64;
+    public static final Duration DEFAULT_MAX_DELAY = Duration.ofMillis(2);
+
+    private final TransactionTemplate txTemplate;
+    private final MemberServiceV4 memberService; // 이체 한 건의 로직은 bizLogicAtomic 을 그대로 사용
+    private final MicroBatcher<PendingTransfer> batcher;
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder transferCount = new LongAdder();
+
+    public GroupCommitTransferService(PlatformTransactionManager txManager, MemberRepository memberRepository) {
+        this(txManager, memberRepository, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY);
+    }
+
+    public GroupCommitTransferService(PlatformTransactionManager txManager, MemberRepository memberRepository,
+                                      int maxBatchSize, Duration maxDelay) {
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.memberService = new MemberServiceV4(memberRepository);
+        this.batcher = new MicroBatcher<>("GroupCommitTransferService", "group-commit-flusher", maxBatchSize, maxDelay,
+                this::flush, (transfer, e) -> transfer.future.completeExceptionally(e));
+    }
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        PendingTransfer transfer = new PendingTransfer(fromId, toId, money);
+        batcher.submit(transfer);
+        return transfer.future;
+    }
+
+    // 이미 받은 이체는 모두 처리하고 종료한다
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getTransferCount() {
+        return transferCount.sum();
+    }
+
+    /*
+     한 트랜젝션 = commit 한번
+     - 이체마다 savepoint 를 잡고, 실패하면 그 savepoint 까지만 되돌린다 (이미 성공한 이체는 유지)
+     - JDBC batch (executeBatch) 는 한 건의 실패만 골라서 되돌릴 수 없으므로, 이체는 한 건씩 실행하되
+       같은 Connection 에서 PSTMT 캐시를 타므로 prepare 비용은 트랜젝션당 한번이다
+     - commit 자체가 실패하면 (또는 savepoint 로 되돌리지 못하면) 아직 끝나지 않은 이체들을 모두 실패로 알린다
+     */
+    private void flush(List<PendingTransfer> batch) {
+
+        List<PendingTransfer> applied = new ArrayList<>(batch.size());
+
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (PendingTransfer transfer : batch) {
+                    if (apply(status, transfer)) {
+                        applied.add(transfer);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("group commit 실패 - batch size = {}", batch.size(), e);
+            batch.forEach(transfer -> transfer.future.completeExceptionally(e)); // 이미 실패로 끝난 이체는 그대로
+            return;
+        }
+
+        batchCount.increment();
+        transferCount.add(applied.size());
+        applied.forEach(transfer -> transfer.future.complete(null));
+    }
+
+    private boolean apply(TransactionStatus status, PendingTransfer transfer) {
+        Object savepoint = status.createSavepoint();
+        try {
+            memberService.bizLogicAtomic(transfer.fromId, transfer.toId, transfer.money);
+            status.releaseSavepoint(savepoint);
+            return true;
+        } catch (RuntimeException e) {
+            status.rollbackToSavepoint(savepoint);
+            transfer.future.completeExceptionally(e);
+            return false;
+        }
+    }
+
+    private static class PendingTransfer {
+
+        private final String fromId;
+        private final String toId;
+        private final int money;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingTransfer(String fromId, String toId, int money) {
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.support.MemberIdAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ 회원 가입 - ID 를 MemberIdAllocator 로 받아서 저장한다
+ - ExceptionTranslatorV1Test 의 Service 는 ID 가 겹치면 (MyDbDuplicateKeyException) 임의 숫자를 붙여 다시 저장한다
+   > 실패한 insert + 예외 생성 비용이 들고, 회원이 많아질수록 자주 겹친다 (다시 겹칠 수도 있다)
+ - 발급기가 준 ID 는 겹치지 않으므로 중복 키 복구 경로가 필요 없다
+ */
+@Slf4j
+public class MemberJoinService {
+
+    private final MemberRepository memberRepository;
+    private final MemberIdAllocator idAllocator;
+
+    public MemberJoinService(MemberRepository memberRepository, MemberIdAllocator idAllocator) {
+        this.memberRepository = memberRepository;
+        this.idAllocator = idAllocator;
+    }
+
+    public Member join(int money) {
+        return memberRepository.save(new Member(idAllocator.nextId(), money));
+    }
+
+    // 여러명을 한번에 - saveAll 로 batch 저장
+    public List<Member> joinAll(int count, int money) {
+        List<Member> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            members.add(new Member(idAllocator.nextId(), money));
+        }
+        memberRepository.saveAll(members);
+        return members;
+    }
+}
@@ -6,6 +6,11 @@ import springdb.jdbc_study.repository.MemberRepository;
 import springdb.jdbc_study.repository.MemberRepositoryV3;
 
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /*
  예외 누수 문제까지 해결해보자
@@ -35,17 +40,105 @@ public class MemberServiceV4 {
 
     public void bizLogic(String fromId, String toId, int money) {
 
-        Member fromMember = memberRepository.findById(fromId);
-        Member toMember = memberRepository.findById(toId);
+        // 두 회원을 쿼리 한번으로 조회한다
+        Map<String, Member> members = memberRepository.findAllById(List.of(fromId, toId)).stream()
+                .collect(Collectors.toMap(Member::getMemberId, Function.identity()));
+
+        Member fromMember = getMember(members, fromId);
+        Member toMember = getMember(members, toId);
+
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+        validation(toMember.getMemberId());
+        memberRepository.update(toId, toMember.getMoney() + money);
+    }
+
+    // 조회 -> 계산 -> 절대값 update 대신, 상대값 update 두 번으로 끝낸다
+    @Transactional
+    public void accountTransferAtomic(String fromId, String toId, int money) {
+        bizLogicAtomic(fromId, toId, money);
+    }
+
+    /*
+     bizLogic 은 findById 2번 + update 2번 = 4번 왕복, 그 사이에 다른 Tx 가 끼어들면 갱신 손실이 발생한다
+     - money = money + ? 로 DB 가 직접 계산하므로 격리수준을 올리지 않아도 갱신 손실이 없다
+     - 잔액 부족 / 회원 없음은 update count 로 판단하고, 예외로 Tx 를 롤백시킨다
+     */
+    public void bizLogicAtomic(String fromId, String toId, int money) {
+
+        if (!memberRepository.addMoney(fromId, -money)) {
+            throw new IllegalStateException("출금 실패 : 잔액 부족 또는 회원 없음 memberId = " + fromId);
+        }
+
+        validation(toId);
+
+        if (!memberRepository.addMoney(toId, money)) {
+            throw new IllegalStateException("입금 실패 : 회원 없음 memberId = " + toId);
+        }
+    }
+
+
+    // 조회하면서 row lock 을 잡는 비관적 방식 - 격리수준을 올리지 않고도 갱신 손실이 없다
+    @Transactional
+    public void accountTransferForUpdate(String fromId, String toId, int money) {
+        bizLogicForUpdate(fromId, toId, money);
+    }
+
+    /*
+     from -> to 순서로 lock 을 잡으므로, 반대 방향 이체가 동시에 오면 서로 기다리다 Lock 타임아웃이 날 수 있다
+     */
+    public void bizLogicForUpdate(String fromId, String toId, int money) {
+
+        Member fromMember = memberRepository.findByIdForUpdate(fromId);
+        Member toMember = memberRepository.findByIdForUpdate(toId);
+
+        memberRepository.update(fromId, fromMember.getMoney() - money);
+        validation(toMember.getMemberId());
+        memberRepository.update(toId, toMember.getMoney() + money);
+    }
+
+
+    // 비관적 락이지만 항상 같은 순서로 lock 을 잡는다 - 데드락이 생기지 않는다
+    @Transactional
+    public void accountTransferLockOrdered(String fromId, String toId, int money) {
+        bizLogicLockOrdered(fromId, toId, money);
+    }
+
+    /*
+     A -> B 와 B -> A 가 동시에 오면 bizLogicForUpdate 는 서로 상대가 잡은 lock 을 기다린다 (데드락 / Lock 타임아웃)
+     - 이체 방향과 상관없이 memberId 가 작은 쪽부터 lock 을 잡으면, 나중에 온 Tx 는 첫 lock 에서 기다리기만 하고 순환 대기가 생기지 않는다
+     - 자기 자신에게 보내는 이체는 거절한다 - 같은 잔액을 두번 읽고 입금 update 가 출금 update 를 덮어써서 돈이 늘어난다
+     */
+    public void bizLogicLockOrdered(String fromId, String toId, int money) {
+
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+
+        String firstId = fromId.compareTo(toId) < 0 ? fromId : toId;
+        String secondId = firstId.equals(fromId) ? toId : fromId;
+
+        Member first = memberRepository.findByIdForUpdate(firstId);
+        Member second = memberRepository.findByIdForUpdate(secondId);
+
+        Member fromMember = firstId.equals(fromId) ? first : second;
+        Member toMember = firstId.equals(fromId) ? second : first;
 
         memberRepository.update(fromId, fromMember.getMoney() - money);
-        validation(toMember);
+        validation(toMember.getMemberId());
         memberRepository.update(toId, toMember.getMoney() + money);
     }
 
 
-    private void validation(Member member) {
-        if (member.getMemberId().equals("FOR_ERROR")) {
+    private Member getMember(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId = " + memberId);
+        }
+        return member;
+    }
+
+    private void validation(String memberId) {
+        if (memberId.equals("FOR_ERROR")) {
             throw new IllegalStateException("이체중 예외 발생 : 그냥 상황 종료시켜버리기");
         }
     }
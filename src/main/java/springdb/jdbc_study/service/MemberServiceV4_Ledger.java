@@ -0,0 +1,38 @@
+package springdb.jdbc_study.service;
+
+import org.springframework.transaction.annotation.Transactional;
+import springdb.jdbc_study.repository.LedgerMemberRepository;
+
+/*
+ 원장 방식 이체 - member.money 를 제자리에서 바꾸지 않고 출금 / 입금 항목을 쌓기만 한다
+ - 잔액은 LedgerMemberRepository 가 스냅샷 + 원장 꼬리로 계산해서 보여준다 (MemberRepository 로 읽어도 같은 값)
+ */
+public class MemberServiceV4_Ledger {
+
+    private final LedgerMemberRepository ledgerRepository;
+
+    public MemberServiceV4_Ledger(LedgerMemberRepository ledgerRepository) {
+        this.ledgerRepository = ledgerRepository;
+    }
+
+    @Transactional
+    public void accountTransfer(String fromId, String toId, int money) {
+        bizLogic(fromId, toId, money);
+    }
+
+    // 검증을 먼저 하고, 통과하면 출금 / 입금 두 항목을 한번에 쌓는다
+    public void bizLogic(String fromId, String toId, int money) {
+
+        validation(toId);
+
+        if (!ledgerRepository.appendTransfer(fromId, toId, money)) {
+            throw new IllegalStateException("이체 실패 : 잔액 부족 또는 회원 없음 " + fromId + " -> " + toId);
+        }
+    }
+
+    private void validation(String memberId) {
+        if (memberId.equals("FOR_ERROR")) {
+            throw new IllegalStateException("이체중 예외 발생 : 그냥 상황 종료시켜버리기");
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ 낙관적 락 이체
+ - 격리수준을 올리거나 row lock 을 잡지 않고, version 이 그대로일 때만 update 한다 (Compare-And-Set)
+ - 충돌하면 (누가 먼저 바꿨으면) 트랜젝션을 통째로 롤백하고, 조금 쉬었다가 처음부터 다시 한다
+ - 재시도는 새 트랜젝션이어야 하므로 @Transactional 대신 TxTemplate 을 반복 호출한다 (V3_2 와 같은 방식)
+ */
+@Slf4j
+public class MemberServiceV4_Optimistic {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+    public static final Duration DEFAULT_BASE_BACKOFF = Duration.ofMillis(1);
+
+    private static final int MAX_BACKOFF_SHIFT = 10; // 최대 대기 = baseBackoff * 2^10
+
+    private final TransactionTemplate txTemplate;
+    private final MemberRepository memberRepository;
+    private final int maxAttempts;
+    private final long baseBackoffNanos;
+
+    private final LongAdder conflictCount = new LongAdder();  // version 충돌 횟수
+    private final LongAdder retryCount = new LongAdder();     // 충돌 후 다시 시도한 횟수
+    private final LongAdder exhaustedCount = new LongAdder(); // maxAttempts 를 다 쓰고 포기한 이체 수
+
+    public MemberServiceV4_Optimistic(PlatformTransactionManager txManager, MemberRepository memberRepository) {
+        this(txManager, memberRepository, DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_BACKOFF);
+    }
+
+    public MemberServiceV4_Optimistic(PlatformTransactionManager txManager, MemberRepository memberRepository,
+                                      int maxAttempts, Duration baseBackoff) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive = " + maxAttempts);
+        }
+        this.txTemplate = new TransactionTemplate(txManager);
+        this.memberRepository = memberRepository;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                txTemplate.executeWithoutResult(status -> bizLogic(fromId, toId, money));
+                return;
+            } catch (OptimisticLockingFailureException e) {
+                conflictCount.increment();
+                if (attempt >= maxAttempts) {
+                    exhaustedCount.increment();
+                    throw e;
+                }
+                log.debug("version 충돌 - 재시도 attempt = {}, {} -> {}", attempt, fromId, toId);
+                retryCount.increment();
+                backoff(attempt);
+            }
+        }
+    }
+
+    // 자기 자신에게 보내는 이체는 거절 - 같은 version 으로 두번 CAS 하면 두번째가 늘 충돌해서 재시도만 반복한다
+    public void bizLogic(String fromId, String toId, int money) {
+
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+
+        Map<String, Member> members = memberRepository.findAllById(List.of(fromId, toId)).stream()
+                .collect(Collectors.toMap(Member::getMemberId, Function.identity()));
+
+        Member fromMember = getMember(members, fromId);
+        Member toMember = getMember(members, toId);
+
+        updateIfVersion(fromMember, fromMember.getMoney() - money);
+        validation(toMember.getMemberId());
+        updateIfVersion(toMember, toMember.getMoney() + money);
+    }
+
+    public long getConflictCount() {
+        return conflictCount.sum();
+    }
+
+    public long getRetryCount() {
+        return retryCount.sum();
+    }
+
+    public long getExhaustedCount() {
+        return exhaustedCount.sum();
+    }
+
+    private void updateIfVersion(Member member, int updateMoney) {
+        if (!memberRepository.updateIfVersion(member.getMemberId(), updateMoney, member.getVersion())) {
+            throw new OptimisticLockingFailureException(
+                    "version 충돌 memberId = " + member.getMemberId() + ", version = " + member.getVersion());
+        }
+    }
+
+    /*
+     Full Jitter - 0 ~ baseBackoff * 2^(attempt-1) 사이에서 무작위로 쉰다
+     - 같이 충돌한 Tx 들이 같은 시각에 다시 몰려서 또 충돌하는 것을 막는다
+     */
+    private void backoff(int attempt) {
+        long maxNanos = baseBackoffNanos << Math.min(attempt - 1, MAX_BACKOFF_SHIFT);
+        if (maxNanos <= 0) {
+            return;
+        }
+        LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(maxNanos));
+    }
+
+    private Member getMember(Map<String, Member> members, String memberId) {
+        Member member = members.get(memberId);
+        if (member == null) {
+            throw new NoSuchElementException("member not found memberId = " + memberId);
+        }
+        return member;
+    }
+
+    private void validation(String memberId) {
+        if (memberId.equals("FOR_ERROR")) {
+            throw new IllegalStateException("이체중 예외 발생 : 그냥 상황 종료시켜버리기");
+        }
+    }
+}
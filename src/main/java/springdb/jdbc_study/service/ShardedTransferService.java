@@ -0,0 +1,200 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import springdb.jdbc_study.repository.MemberShard;
+import springdb.jdbc_study.repository.ShardedMemberRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/*
+ 샤드 이체
+ - 같은 샤드 : 그 샤드 트랜젝션 하나로 bizLogicAtomic 과 같이 처리
+ - 다른 샤드 : 샤드를 묶는 트랜젝션이 없으므로 단계마다 자기 샤드 트랜젝션으로 나눈다 (Saga)
+   1) 출금 샤드 Tx  : 출금 + transfer_intent (PREPARED) 기록
+   2) 입금 샤드 Tx  : transfer_applied 기록 + 입금 - 같은 transfer_id 는 PK 중복이라 두번 입금되지 않는다
+   3) 출금 샤드 Tx  : intent 를 DONE 으로
+   입금할 수 없으면 (회원 없음) 입금 샤드에 ABORTED tombstone 을 먼저 커밋하고,
+   출금 샤드 Tx 로 intent 를 ABORTED 로 바꾸면서 출금을 되돌린다
+   > tombstone 이 있으면 뒤늦은 재시도 / recover 의 2단계는 입금하지 않는다 - 되돌린 돈이 다시 입금되지 않도록
+ - 중간에 죽으면 PREPARED 로 남은 intent 를 recover 가 이어서 끝낸다 (2단계는 몇번을 다시 해도 안전)
+ - 1) 과 2) 사이에는 돈이 "이동 중" 이라 두 샤드 잔액의 합이 잠깐 작아 보인다
+ */
+@Slf4j
+public class ShardedTransferService {
+
+    static final String PREPARED = "PREPARED";
+    static final String APPLIED = "APPLIED";
+    static final String DONE = "DONE";
+    static final String ABORTED = "ABORTED";
+
+    private final ShardedMemberRepository memberRepository;
+
+    public ShardedTransferService(ShardedMemberRepository memberRepository) {
+        this.memberRepository = memberRepository;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+
+        validation(toId);
+
+        MemberShard fromShard = memberRepository.shardOf(fromId);
+        MemberShard toShard = memberRepository.shardOf(toId);
+
+        if (fromShard == toShard) {
+            fromShard.getTxTemplate().executeWithoutResult(status -> {
+                debit(fromShard, fromId, money);
+                credit(toShard, toId, money);
+            });
+            return;
+        }
+
+        String transferId = prepare(fromId, toId, money);
+        if (!apply(transferId, toId, money) && abort(transferId, fromId, toId, money)) {
+            throw new IllegalStateException("입금 실패 : 회원 없음 memberId = " + toId);
+        }
+        markDone(fromShard, transferId);
+    }
+
+    /*
+     PREPARED 로 남은 이체를 끝낸다 - 진행 중인 이체와 겹치지 않도록 olderThan 보다 오래된 것만
+     @return 처리한 intent 수
+     */
+    public int recover(Duration olderThan) {
+        Timestamp before = Timestamp.from(Instant.now().minus(olderThan));
+        int recovered = 0;
+
+        for (MemberShard shard : memberRepository.getShards()) {
+            List<PendingIntent> intents = shard.getTemplate().query(
+                    "select transfer_id, from_id, to_id, money from transfer_intent where status = ? and created_at <= ?",
+                    (rs, rowNum) -> new PendingIntent(rs.getString("transfer_id"), rs.getString("from_id"),
+                            rs.getString("to_id"), rs.getInt("money")),
+                    PREPARED, before);
+
+            for (PendingIntent intent : intents) {
+                if (apply(intent.transferId, intent.toId, intent.money)
+                        || !abort(intent.transferId, intent.fromId, intent.toId, intent.money)) {
+                    markDone(shard, intent.transferId);
+                }
+                recovered++;
+            }
+        }
+        if (recovered > 0) {
+            log.info("sharded transfer recovered intents = {}", recovered);
+        }
+        return recovered;
+    }
+
+    // 1) 출금 + intent - 잔액 부족이면 아무것도 남기지 않는다
+    String prepare(String fromId, String toId, int money) {
+        MemberShard fromShard = memberRepository.shardOf(fromId);
+        String transferId = UUID.randomUUID().toString();
+
+        fromShard.getTxTemplate().executeWithoutResult(status -> {
+            debit(fromShard, fromId, money);
+            fromShard.getTemplate().update(
+                    "insert into transfer_intent(transfer_id, from_id, to_id, money, status) values (?, ?, ?, ?, ?)",
+                    transferId, fromId, toId, money, PREPARED);
+        });
+        return transferId;
+    }
+
+    /*
+     2) 입금 - 이미 입금한 이체면 (PK 중복) 입금하지 않고 성공으로 본다
+     - ABORTED tombstone 이 있으면 되돌리는 중 / 되돌린 이체라 입금하지 않는다
+     @return false 면 입금할 회원이 없거나 이미 되돌린 이체
+     */
+    boolean apply(String transferId, String toId, int money) {
+        MemberShard toShard = memberRepository.shardOf(toId);
+        Boolean applied = toShard.getTxTemplate().execute(status -> {
+            try {
+                toShard.getTemplate().update(
+                        "insert into transfer_applied(transfer_id, status) values (?, ?)", transferId, APPLIED);
+            } catch (DuplicateKeyException e) {
+                return APPLIED.equals(appliedStatus(toShard, transferId));
+            }
+            if (!toShard.getRepository().addMoney(toId, money)) {
+                status.setRollbackOnly();
+                return false;
+            }
+            return true;
+        });
+        return Boolean.TRUE.equals(applied);
+    }
+
+    /*
+     되돌리기
+     - 먼저 입금 샤드에 ABORTED tombstone 을 커밋한다 - 이후의 apply 는 이 이체를 입금하지 않는다
+       > 이미 APPLIED 가 있으면 그 사이 입금이 끝난 것이라 되돌리지 않는다
+     - intent 를 ABORTED 로 바꾼 Tx 만 출금을 되돌린다 - 되돌리기도 한번만
+     @return false 면 이미 입금된 이체 (DONE 으로 끝내야 한다)
+     */
+    private boolean abort(String transferId, String fromId, String toId, int money) {
+        MemberShard toShard = memberRepository.shardOf(toId);
+        try {
+            toShard.getTemplate().update(
+                    "insert into transfer_applied(transfer_id, status) values (?, ?)", transferId, ABORTED);
+        } catch (DuplicateKeyException e) {
+            if (APPLIED.equals(appliedStatus(toShard, transferId))) {
+                return false;
+            }
+        }
+
+        MemberShard fromShard = memberRepository.shardOf(fromId);
+        fromShard.getTxTemplate().executeWithoutResult(status -> {
+            int aborted = fromShard.getTemplate().update(
+                    "update transfer_intent set status = ? where transfer_id = ? and status = ?", ABORTED, transferId, PREPARED);
+            if (aborted == 1) {
+                fromShard.getRepository().addMoney(fromId, money);
+            }
+        });
+        return true;
+    }
+
+    private String appliedStatus(MemberShard toShard, String transferId) {
+        return toShard.getTemplate().queryForObject(
+                "select status from transfer_applied where transfer_id = ?", String.class, transferId);
+    }
+
+    private void markDone(MemberShard fromShard, String transferId) {
+        fromShard.getTemplate().update(
+                "update transfer_intent set status = ? where transfer_id = ? and status = ?", DONE, transferId, PREPARED);
+    }
+
+    private void debit(MemberShard shard, String fromId, int money) {
+        if (!shard.getRepository().addMoney(fromId, -money)) {
+            throw new IllegalStateException("출금 실패 : 잔액 부족 또는 회원 없음 memberId = " + fromId);
+        }
+    }
+
+    private void credit(MemberShard shard, String toId, int money) {
+        if (!shard.getRepository().addMoney(toId, money)) {
+            throw new IllegalStateException("입금 실패 : 회원 없음 memberId = " + toId);
+        }
+    }
+
+    private void validation(String memberId) {
+        if (memberId.equals("FOR_ERROR")) {
+            throw new IllegalStateException("이체중 예외 발생 : 그냥 상황 종료시켜버리기");
+        }
+    }
+
+    private static class PendingIntent {
+
+        private final String transferId;
+        private final String fromId;
+        private final String toId;
+        private final int money;
+
+        PendingIntent(String transferId, String fromId, String toId, int money) {
+            this.transferId = transferId;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.money = money;
+        }
+    }
+}
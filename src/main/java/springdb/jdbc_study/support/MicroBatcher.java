@@ -0,0 +1,129 @@
+package springdb.jdbc_study.support;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/*
+ 여러 쓰레드의 요청을 잠깐 모아서 한 쓰레드가 한번에 처리하는 틀 (GroupCommitTransferService, BatchingMemberLoader)
+ - submit 은 큐에 넣기만 하고, 처리 쓰레드가 maxBatchSize 개가 모이거나 maxDelay 가 지나면 handler 로 넘긴다
+ - 처리하지 못한 요청 (닫힌 뒤 / 인터럽트) 은 onFailure 로 실패를 알린다 - 요청이 끝나지 않은 채로 남지 않는다
+ - 요청 (T) 은 submit 마다 새로 만든 객체여야 한다 (close 와 겹쳤을 때 큐에서 자기 것을 꺼내서 실패시킨다)
+ */
+public class MicroBatcher<T> implements AutoCloseable {
+
+    private static final long IDLE_POLL_MILLIS = 100; // 큐가 비어있을 때 종료 여부를 확인하는 주기
+
+    private final String ownerName;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Consumer<List<T>> handler;
+    private final BiConsumer<T, Throwable> onFailure;
+
+    private final BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    public MicroBatcher(String ownerName, String threadName, int maxBatchSize, Duration maxDelay,
+                        Consumer<List<T>> handler, BiConsumer<T, Throwable> onFailure) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive = " + maxBatchSize);
+        }
+        this.ownerName = ownerName;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.handler = handler;
+        this.onFailure = onFailure;
+
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /*
+     running 을 본 뒤에 close 가 큐를 비웠을 수 있으므로, 넣은 다음에 한번 더 본다
+     - 닫혔는데 아직 큐에 남아 있으면 직접 꺼내서 실패시킨다 (꺼내지 못했으면 처리 쓰레드나 close 가 가져가서 처리한다)
+     */
+    public void submit(T item) {
+        if (!running) {
+            onFailure.accept(item, closed());
+            return;
+        }
+        queue.add(item);
+        if (!running && queue.remove(item)) {
+            onFailure.accept(item, closed());
+        }
+    }
+
+    // 이미 받은 요청은 모두 처리하고 종료한다
+    @Override
+    public void close() {
+        running = false;
+        try {
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        failQueued(closed()); // 종료 직전에 끼어든 요청
+    }
+
+    private IllegalStateException closed() {
+        return new IllegalStateException(ownerName + " is closed");
+    }
+
+    private void run() {
+
+        List<T> batch = new ArrayList<>(maxBatchSize);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                T first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch, System.nanoTime() + maxDelayNanos);
+                handler.accept(batch);
+            } catch (InterruptedException e) {
+                // 처리 쓰레드가 끝나므로 close 와 같이 더 받지 않는다 - 남은 요청은 여기서, 이후 submit 은 running 을 보고 실패
+                running = false;
+                Thread.currentThread().interrupt();
+                batch.forEach(item -> onFailure.accept(item, e));
+                failQueued(e);
+                return;
+            } catch (RuntimeException e) {
+                batch.forEach(item -> onFailure.accept(item, e)); // handler 가 놓친 예외 - 쓰레드는 계속 돈다
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void failQueued(Throwable cause) {
+        List<T> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        leftovers.forEach(item -> onFailure.accept(item, cause));
+    }
+
+    // 첫 요청이 들어온 시점부터 maxDelay 까지, 또는 maxBatchSize 가 찰 때까지 모은다
+    private void collect(List<T> batch, long deadlineNanos) throws InterruptedException {
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                queue.drainTo(batch, maxBatchSize - batch.size()); // 이미 와있는 것은 기다리지 않고 가져간다
+                return;
+            }
+            T next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+-- 강의에서 H2 콘솔로 직접 만들던 테이블
+-- 자동으로 실행되지 않는다 - 내장 H2 (mem) 테스트와 JMH 벤치마크가 ResourceDatabasePopulator 로 직접 실행한다
+-- 주의 ! MemberRepositoryV4_1 / V4_2 / V5 는 member.version 컬럼이 필요하다
+--   > 강의 때 만든 H2 서버 (jdbc:h2:tcp://localhost/~/test) 의 member 테이블에는 없으므로, 서버로 돌리려면 아래 alter 를 H2 콘솔에서 한번 실행
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id)
+);
+
+-- 낙관적 락 컬럼 - 이전 버전의 schema.sql 로 만든 DB 에 다시 실행해도 추가되도록 (이미 있으면 무시)
+alter table member add column if not exists version bigint not null default 0;
+
+-- 잔액을 여러 row (stripe) 로 나눠 담는 테이블 - StripedMemberRepository
+-- 입금은 아무 stripe 하나에만 하므로 같은 회원에 대한 입금이 한 row 에 몰리지 않는다
+create table if not exists member_stripe (
+    member_id varchar(10),
+    stripe integer not null,
+    money integer not null default 0,
+    version bigint not null default 0,
+    primary key (member_id, stripe)
+);
+-- stripe 마다 입출금 횟수 - 회원 version = member.version + stripe version 의 합 (앞서 만든 테이블에도 추가)
+alter table member_stripe add column if not exists version bigint not null default 0;
+
+-- 이체 원장 (append-only) - LedgerMemberRepository
+-- 잔액 = member.money (압축해둔 스냅샷) + 아직 압축 안 된 (compaction_id is null) 항목의 합
+create table if not exists member_ledger (
+    entry_id bigint auto_increment,
+    member_id varchar(10) not null,
+    amount integer not null,
+    compaction_id bigint,
+    created_at timestamp not null default current_timestamp,
+    primary key (entry_id)
+);
+create index if not exists member_ledger_tail on member_ledger (member_id, compaction_id);
+create sequence if not exists member_ledger_compaction_seq;
+
+-- TransferEngine 체크포인트 - 파티션 (partition_id) 이 source_partition 의 WAL 을 몇번 record 까지 반영해서 member 에 썼는지
+create table if not exists engine_checkpoint (
+    partition_id integer not null,
+    source_partition integer not null,
+    applied_seq bigint not null,
+    primary key (partition_id, source_partition)
+);
+
+-- 샤드를 넘나드는 이체 - ShardedTransferService
+-- 출금 샤드 : 출금과 같은 트랜젝션에 남기는 이체 의도 (PREPARED -> DONE / ABORTED)
+create table if not exists transfer_intent (
+    transfer_id varchar(36),
+    from_id varchar(10) not null,
+    to_id varchar(10) not null,
+    money integer not null,
+    status varchar(10) not null,
+    created_at timestamp not null default current_timestamp,
+    primary key (transfer_id)
+);
+create index if not exists transfer_intent_status on transfer_intent (status, created_at);
+
+-- 입금 샤드 : 입금과 같은 트랜젝션에 남기는 기록 - 같은 이체가 두번 입금되지 않도록
+-- status = ABORTED 는 출금을 되돌리기 전에 남기는 tombstone - 이 이체는 다시 입금하지 않는다
+create table if not exists transfer_applied (
+    transfer_id varchar(36),
+    status varchar(10) not null default 'APPLIED',
+    primary key (transfer_id)
+);
+alter table transfer_applied add column if not exists status varchar(10) not null default 'APPLIED';
+
+-- 회원 ID 블록 (pooled hi/lo) - MemberIdAllocator
+-- nextval 한번 = ID 1000 개 예약 (hi ~ hi + 999) - increment 는 MemberIdAllocator.SEQUENCE_INCREMENT 와 같아야 한다
+create sequence if not exists member_id_block_seq start with 1 increment by 1000;
@@ -0,0 +1,104 @@
+package springdb.jdbc_study.connection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepositoryV1;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ 내장 H2 (mem) 를 감싸서 측정값 / 누수 탐지 / JMX 노출을 확인한다
+ - 자동 누수 점검 주기가 테스트 중에 끼어들지 않도록 leakThreshold 는 길게 만들고, 필요할 때 줄여서 detectLeaks 를 직접 부른다
+ */
+class InstrumentedDataSourceTest {
+
+    static final String MEMBER_A = "memberA";
+
+    private DriverManagerDataSource target;
+    private InstrumentedDataSource dataSource;
+
+    @BeforeEach
+    void before() {
+        target = new DriverManagerDataSource("jdbc:h2:mem:instrumented;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(target);
+        dataSource = new InstrumentedDataSource(target, Duration.ofMinutes(1), 1);
+    }
+
+    @Test
+    @DisplayName("빌려갈 때 기다린 시간, 들고 있던 시간, 동시에 빌려간 수를 기록한다")
+    void recordsAcquireHoldAndUsage() throws SQLException {
+        Connection first = dataSource.getConnection();
+        Connection second = dataSource.getConnection();
+        assertThat(dataSource.getActiveConnections()).isEqualTo(2);
+
+        second.close();
+        first.close();
+        first.close(); // 두번 닫아도 한번만 기록
+
+        assertThat(dataSource.getAcquireCount()).isEqualTo(2);
+        assertThat(dataSource.getHoldHistogram().getCount()).isEqualTo(2);
+        assertThat(dataSource.getUsageHistogram().getMaxNanos()).isEqualTo(2); // 두번째는 자기 포함 2개
+        assertThat(dataSource.getActiveConnections()).isZero();
+    }
+
+    @Test
+    @DisplayName("leakThreshold 를 넘겨 들고 있는 Connection 은 한번만 누수로 잡힌다")
+    void detectsLeakOnce() throws Exception {
+        Connection held = dataSource.getConnection();
+
+        assertThat(dataSource.detectLeaks()).isZero();
+
+        dataSource.setLeakThresholdMillis(10);
+        Thread.sleep(30);
+        assertThat(dataSource.detectLeaks()).isEqualTo(1);
+        assertThat(dataSource.detectLeaks()).isZero(); // 같은 Connection 은 다시 알리지 않는다
+        assertThat(dataSource.getLeakCount()).isEqualTo(1);
+
+        held.close();
+        assertThat(dataSource.getActiveConnections()).isZero();
+    }
+
+    @Test
+    @DisplayName("V1 은 Connection 을 먼저 닫아서 Statement 가 열린 채로 반납되고, V4_2 는 그렇지 않다")
+    void findsCloseOrderProblem() throws SQLException {
+        new MemberRepositoryV4_2(dataSource).save(new Member(MEMBER_A, 10000));
+        assertThat(dataSource.getUnclosedStatementCount()).isZero();
+
+        new MemberRepositoryV1(dataSource).findById(MEMBER_A);
+        assertThat(dataSource.getUnclosedStatementCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("JMX 로 통계를 읽을 수 있고, close 하면 내려간다")
+    void exposesOverJmx() throws Exception {
+        dataSource.registerMBean("test");
+        dataSource.getConnection().close();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(InstrumentedDataSource.OBJECT_NAME_PREFIX + ObjectName.quote("test"));
+        assertThat(server.getAttribute(name, "AcquireCount")).isEqualTo(1L);
+
+        dataSource.close();
+        assertThat(server.isRegistered(name)).isFalse();
+    }
+
+    @AfterEach
+    void afterEach() {
+        new MemberRepositoryV4_2(target).delete(MEMBER_A);
+        dataSource.close();
+    }
+}
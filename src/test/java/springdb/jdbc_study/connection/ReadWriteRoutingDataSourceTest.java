@@ -0,0 +1,113 @@
+package springdb.jdbc_study.connection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.ReplicaReadMemberRepository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ Primary / Replica 를 각각 내장 H2 (mem) 로 두고, 복제는 MemberReplicationShim.replicateNow() 로 직접 돌린다
+ */
+class ReadWriteRoutingDataSourceTest {
+
+    static final String MEMBER_A = "memberA";
+
+    private DataSource primary;
+    private DataSource replica;
+    private MemberReplicationShim replicationShim;
+
+    @BeforeEach
+    void before() {
+        primary = embedded("primary");
+        replica = embedded("replica");
+        replicationShim = new MemberReplicationShim(primary, replica, Duration.ofHours(1)); // 자동 복제는 사실상 끈다
+    }
+
+    @Test
+    @DisplayName("트랜젝션 밖 조회는 Replica 로 가므로 복제 전에는 보이지 않는다")
+    void readFromReplica() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ZERO);
+        MemberRepository memberRepository = replicaRead(routing);
+
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        assertThatThrownBy(() -> memberRepository.findById(MEMBER_A))
+                .isInstanceOf(NoSuchElementException.class);
+
+        replicationShim.replicateNow();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(routing.getPrimaryCount()).isEqualTo(1);
+        assertThat(routing.getReplicaCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("readOnly 트랜젝션은 Replica, 쓰기 트랜젝션 안의 조회는 Primary")
+    void routeByTransaction() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ZERO);
+        DataSource dataSource = routing.lazyProxy();
+        MemberRepository memberRepository = replicaRead(routing, dataSource);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        TransactionTemplate readOnlyTxTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        readOnlyTxTemplate.setReadOnly(true);
+
+        txTemplate.executeWithoutResult(status -> {
+            memberRepository.save(new Member(MEMBER_A, 10000));
+            assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        });
+
+        readOnlyTxTemplate.executeWithoutResult(status ->
+                assertThatThrownBy(() -> memberRepository.findById(MEMBER_A)).isInstanceOf(NoSuchElementException.class));
+
+        assertThat(routing.getPrimaryCount()).isEqualTo(1);
+        assertThat(routing.getReplicaCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Read-Your-Writes - 방금 쓴 쓰레드의 조회는 window 동안 Primary 로 간다")
+    void readYourWrites() {
+        ReadWriteRoutingDataSource routing = new ReadWriteRoutingDataSource(primary, replica, Duration.ofMinutes(1));
+        MemberRepository memberRepository = replicaRead(routing);
+
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(routing.getReplicaCount()).isZero();
+    }
+
+    @AfterEach
+    void afterEach() {
+        replicationShim.close();
+        new JdbcTemplate(primary).update("delete from member");
+        new JdbcTemplate(replica).update("delete from member");
+    }
+
+    private MemberRepository replicaRead(ReadWriteRoutingDataSource routing) {
+        return replicaRead(routing, routing.lazyProxy());
+    }
+
+    private MemberRepository replicaRead(ReadWriteRoutingDataSource routing, DataSource dataSource) {
+        return new ReplicaReadMemberRepository(new MemberRepositoryV4_2(dataSource), routing);
+    }
+
+    private DataSource embedded(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        return dataSource;
+    }
+}
@@ -0,0 +1,177 @@
+package springdb.jdbc_study.connection;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 로컬 H2 서버 없이 확인할 수 있도록 내장 H2 (mem) 로 Pool 을 만든다
+ - 물리 Connection 은 unwrap 으로 꺼내서 같은 것을 다시 빌려주는지 비교한다
+ */
+class SimpleConnectionPoolTest {
+
+    private static final String URL = "jdbc:h2:mem:simplePool;DB_CLOSE_DELAY=-1";
+
+    private SimpleConnectionPool pool;
+
+    @Test
+    @DisplayName("close 하면 반납되고, 같은 쓰레드는 방금 반납한 Connection 을 다시 받는다")
+    void reuseWithThreadAffinity() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 4);
+
+        Connection first = pool.getConnection();
+        Connection physical = first.unwrap(Connection.class);
+        first.close();
+        assertThat(first.isClosed()).isTrue();
+        assertThatThrownBy(first::createStatement).isInstanceOf(SQLException.class); // 반납한 Proxy 는 못 쓴다
+
+        try (Connection second = pool.getConnection()) {
+            assertThat(second.unwrap(Connection.class)).isSameAs(physical);
+            assertThat(pool.getActiveConnections()).isEqualTo(1);
+        }
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+        assertThat(pool.getThreadLocalHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("maximumPoolSize 를 다 빌려가면 connectionTimeout 만큼 기다린 뒤 예외")
+    void maximumPoolSize() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 1, Duration.ofMillis(100), Duration.ZERO);
+
+        try (Connection held = pool.getConnection()) {
+            assertThatThrownBy(() -> pool.getConnection()).isInstanceOf(SQLTransientConnectionException.class);
+        }
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("기다리던 쓰레드는 반납된 Connection 을 바로 넘겨받는다")
+    void handoffToWaiter() throws Exception {
+        pool = new SimpleConnectionPool(URL, "sa", "", 1, Duration.ofSeconds(5), Duration.ZERO);
+
+        Connection held = pool.getConnection();
+        Connection physical = held.unwrap(Connection.class);
+        CompletableFuture<Connection> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.getConnection();
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(50);
+        assertThat(waiter).isNotDone();
+        held.close();
+
+        try (Connection handed = waiter.get(5, TimeUnit.SECONDS)) {
+            assertThat(handed.unwrap(Connection.class)).isSameAs(physical);
+        }
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("끝내지 않은 트랜젝션은 반납할 때 rollback 되고 autoCommit 도 되돌려진다")
+    void resetOnReturn() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 1);
+        try (Connection con = pool.getConnection(); Statement stmt = con.createStatement()) {
+            stmt.execute("create table if not exists pool_test (id int)");
+            stmt.execute("delete from pool_test");
+        }
+
+        try (Connection con = pool.getConnection(); Statement stmt = con.createStatement()) {
+            con.setAutoCommit(false);
+            stmt.execute("insert into pool_test values (1)");
+        } // commit 하지 않고 반납
+
+        try (Connection con = pool.getConnection(); Statement stmt = con.createStatement();
+             ResultSet rs = stmt.executeQuery("select count(*) from pool_test")) {
+            assertThat(con.getAutoCommit()).isTrue();
+            rs.next();
+            assertThat(rs.getInt(1)).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("물리 Connection 이 죽은 채로 반납되면 버리고, 다음에는 새로 맺는다")
+    void discardDeadConnection() throws SQLException {
+        pool = new SimpleConnectionPool(URL, "sa", "", 2);
+
+        Connection con = pool.getConnection();
+        Connection physical = con.unwrap(Connection.class);
+        physical.close(); // 네트워크가 끊긴 것처럼
+        con.close();
+
+        try (Connection next = pool.getConnection()) {
+            assertThat(next.unwrap(Connection.class)).isNotSameAs(physical);
+            assertThat(next.isValid(1)).isTrue();
+        }
+        assertThat(pool.getCreatedCount()).isEqualTo(2);
+        assertThat(pool.getTotalConnections()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("idleTimeout 보다 오래 놀고 있던 Connection 은 닫힌다")
+    void evictIdle() throws Exception {
+        pool = new SimpleConnectionPool(URL, "sa", "", 2, Duration.ofSeconds(1), Duration.ofMinutes(1));
+        Connection con = pool.getConnection();
+        con.close();
+
+        assertThat(pool.evictIdle()).isZero(); // 아직 1분이 안 지났다
+
+        pool.close();
+        pool = new SimpleConnectionPool(URL, "sa", "", 2, Duration.ofSeconds(1), Duration.ofMillis(1));
+        pool.getConnection().close();
+        Thread.sleep(20);
+
+        pool.evictIdle(); // housekeeper 가 먼저 닫았을 수도 있다
+        assertThat(pool.getTotalConnections()).isZero();
+        assertThat(pool.getEvictedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("DBConnectionUtil 도 usePool 이후에는 Pool 에서 빌려온다")
+    void dbConnectionUtilUsesPool() throws SQLException {
+        DBConnectionUtil.usePool(1);
+        try {
+            Connection con = DBConnectionUtil.getConnection();
+            assertThat(con.toString()).startsWith("SimpleConnectionPool");
+            con.close();
+        } catch (IllegalStateException e) {
+            // 로컬 H2 서버 (ConnectionConst.URL) 가 떠있지 않으면 맺을 수 없다 - DBConnectionUtilTest 와 같은 전제
+            assertThat(e).hasCauseInstanceOf(SQLException.class);
+        } finally {
+            DBConnectionUtil.useDriverManager();
+        }
+    }
+
+    @Test
+    @DisplayName("DBConnectionUtil.usePool 은 이미 쓰는 Pool 과 크기가 다르면 예외")
+    void usePoolRejectsDifferentSize() {
+        DBConnectionUtil.usePool(1);
+        try {
+            DBConnectionUtil.usePool(1); // 같은 크기는 그대로
+            assertThatThrownBy(() -> DBConnectionUtil.usePool(2)).isInstanceOf(IllegalStateException.class);
+        } finally {
+            DBConnectionUtil.useDriverManager();
+        }
+    }
+
+    @AfterEach
+    void afterEach() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+}
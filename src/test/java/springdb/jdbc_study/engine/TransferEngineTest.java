@@ -0,0 +1,190 @@
+package springdb.jdbc_study.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ WAL 파일은 임시 디렉토리에, 체크포인트는 내장 H2 (mem) 에 쓴다
+ - 재시작은 엔진을 닫고 같은 디렉토리 / DB 로 새 엔진을 만들어서 확인한다
+ */
+public class TransferEngineTest {
+
+    static final int PARTITIONS = 4;
+    static final int MEMBERS = 8;
+
+    @TempDir
+    Path walDirectory;
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+    private TransferEngine engine;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:engine;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new Member("e" + i, 10000));
+        }
+        memberRepository.saveAll(members);
+
+        engine = start();
+    }
+
+    @Test
+    @DisplayName("파티션을 넘나드는 이체도 잔액의 합은 그대로다")
+    void transfers() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            futures.add(engine.transfer("e" + (i % MEMBERS), "e" + ((i * 3 + 1) % MEMBERS), 7));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertThat(totalBalance(engine)).isEqualTo(MEMBERS * 10000);
+        assertThat(engine.getLatency().getCount()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("잔액 부족 / 없는 회원은 실패하고 WAL 에 남지 않는다")
+    void rejected() {
+        assertThatThrownBy(() -> engine.transfer("e0", "e1", 10001).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> engine.transfer("e0", "noMember", 1).join())
+                .isInstanceOf(CompletionException.class);
+
+        engine.close();
+        engine = start();
+        assertThat(engine.balanceOf("e0").join()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("체크포인트 없이 재시작해도 WAL 로 잔액을 되살린다")
+    void recoverFromWal() {
+        engine.transfer("e0", "e1", 3000).join();
+        engine.transfer("e1", "e2", 500).join();
+        engine.close();
+
+        assertThat(memberRepository.findById("e0").getMoney()).isEqualTo(10000); // DB 는 그대로
+
+        engine = start();
+        assertThat(engine.balanceOf("e0").join()).isEqualTo(7000);
+        assertThat(engine.balanceOf("e1").join()).isEqualTo(12500);
+        assertThat(engine.balanceOf("e2").join()).isEqualTo(10500);
+    }
+
+    @Test
+    @DisplayName("체크포인트 이후 record 만 다시 반영한다 - 두번 더해지지 않는다")
+    void recoverFromCheckpointAndWal() {
+        engine.transfer("e0", "e1", 3000).join();
+        engine.checkpoint();
+        assertThat(memberRepository.findById("e0").getMoney()).isEqualTo(7000);
+
+        engine.transfer("e1", "e0", 1000).join();
+        engine.close();
+
+        engine = start();
+        assertThat(engine.balanceOf("e0").join()).isEqualTo(8000);
+        assertThat(engine.balanceOf("e1").join()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("forceOnCommit = false 여도 체크포인트에 남은 잔액은 합이 그대로이고, 재시작해도 같다")
+    void checkpointAfterCrossPartitionTransfers() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(engine.transfer("e" + (i % MEMBERS), "e" + ((i * 3 + 1) % MEMBERS), 7));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        engine.checkpoint();
+
+        int checkpointed = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            checkpointed += memberRepository.findById("e" + i).getMoney();
+        }
+        assertThat(checkpointed).isEqualTo(MEMBERS * 10000);
+
+        engine.close();
+        engine = start();
+        assertThat(totalBalance(engine)).isEqualTo(MEMBERS * 10000);
+    }
+
+    @Test
+    @DisplayName("close 이후의 이체는 실패하고, 두번 닫아도 된다")
+    void closed() {
+        engine.close();
+        assertThatThrownBy(() -> engine.transfer("e0", "e1", 1).join())
+                .isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        engine.close();
+    }
+
+    @Test
+    @DisplayName("WAL 꼬리가 깨져 있으면 거기까지만 되살리고 이어서 쓴다")
+    void tornTail() throws IOException {
+        engine.transfer("e0", "e1", 3000).join();
+        engine.close();
+
+        Path wal = walDirectory.resolve("transfer-" + Math.floorMod("e0".hashCode(), PARTITIONS) + ".wal");
+        long validEnd = 8 + (8 + 4 + 2 + 2 + 2 + 2); // header + (seq, money, "e0", "e1")
+        try (SeekableByteChannel channel = Files.newByteChannel(wal, StandardOpenOption.WRITE)) {
+            channel.position(validEnd);
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5})); // 쓰다 만 record
+        }
+
+        engine = start();
+        assertThat(engine.balanceOf("e0").join()).isEqualTo(7000);
+        engine.transfer("e0", "e1", 1000).join();
+        engine.close();
+
+        engine = start();
+        assertThat(engine.balanceOf("e0").join()).isEqualTo(6000);
+    }
+
+    @AfterEach
+    void afterEach() {
+        engine.close();
+        new JdbcTemplate(dataSource).update("delete from engine_checkpoint");
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.delete("e" + i);
+        }
+    }
+
+    private TransferEngine start() {
+        return new TransferEngine(memberRepository, dataSource, walDirectory, PARTITIONS, false);
+    }
+
+    private int totalBalance(TransferEngine engine) {
+        int total = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            total += engine.balanceOf("e" + i).join();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,112 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 서로 다른 회원 조회가 findAllById 한번으로 모이는지, 각자 자기 결과를 받는지 확인한다 (내장 H2 mem)
+ */
+class BatchingMemberLoaderTest {
+
+    static final int MEMBERS = 10;
+
+    private MemberRepository memberRepository;
+    private BatchingMemberLoader loader;
+
+    @BeforeEach
+    void before() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:batchLoader;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        loader = new BatchingMemberLoader(memberRepository, 100, Duration.ofMillis(200)); // 테스트에서는 한 batch 로 모이도록 넉넉하게
+
+        List<Member> members = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            members.add(new Member("member" + i, i * 1000));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @Test
+    @DisplayName("서로 다른 회원 조회가 한번의 조회로 모이고, 각자 자기 회원을 받는다")
+    void batch() {
+        List<CompletableFuture<Member>> futures = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            futures.add(loader.load("member" + i));
+        }
+
+        for (int i = 0; i < MEMBERS; i++) {
+            Member member = futures.get(i).join();
+            assertThat(member.getMemberId()).isEqualTo("member" + i);
+            assertThat(member.getMoney()).isEqualTo(i * 1000);
+        }
+        assertThat(loader.getBatchCount()).isEqualTo(1);
+        assertThat(loader.getAverageBatchSize()).isEqualTo(MEMBERS);
+    }
+
+    @Test
+    @DisplayName("같은 회원을 여러번 요청해도 각자 다른 복사본을 받는다")
+    void duplicateKeys() {
+        CompletableFuture<Member> first = loader.load("member1");
+        CompletableFuture<Member> second = loader.load("member1");
+
+        first.join().setMoney(0);
+
+        assertThat(second.join().getMoney()).isEqualTo(1000);
+    }
+
+    @Test
+    @DisplayName("없는 회원은 그 호출만 NoSuchElementException, 같은 batch 의 다른 조회는 성공")
+    void notFound() {
+        CompletableFuture<Member> missing = loader.load("noMember");
+        CompletableFuture<Member> found = loader.load("member2");
+
+        assertThatThrownBy(missing::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(NoSuchElementException.class);
+        assertThat(found.join().getMoney()).isEqualTo(2000);
+        assertThatThrownBy(() -> loader.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    @DisplayName("maxBatchSize 를 넘으면 나눠서 조회한다")
+    void maxBatchSize() {
+        loader.close();
+        loader = new BatchingMemberLoader(memberRepository, 3, Duration.ofMillis(200));
+
+        List<CompletableFuture<Member>> futures = new ArrayList<>();
+        for (int i = 0; i < MEMBERS; i++) {
+            futures.add(loader.load("member" + i));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertThat(loader.getBatchCount()).isEqualTo(4);
+    }
+
+    @AfterEach
+    void afterEach() {
+        loader.close();
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.delete("member" + i);
+        }
+    }
+}
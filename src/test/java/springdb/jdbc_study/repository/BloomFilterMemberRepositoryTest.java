@@ -0,0 +1,107 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.support.MemberIdBloomFilter;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 시작할 때 있던 회원 / 나중에 저장한 회원 / 없는 회원 조회가 각각 어디서 끝나는지 확인한다 (내장 H2 mem)
+ */
+class BloomFilterMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+
+    private DataSource dataSource;
+    private MemberRepository dbRepository;
+    private BloomFilterMemberRepository bloomRepository;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:bloom;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        dbRepository.save(new Member(MEMBER_A, 10000));
+        bloomRepository = new BloomFilterMemberRepository(dbRepository, 1000, 0.01);
+    }
+
+    @Test
+    @DisplayName("시작할 때 있던 회원은 그대로 조회되고, 없는 회원은 DB 에 가지 않고 끝난다")
+    void rejectUnknown() {
+        assertThat(bloomRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        assertThat(bloomRepository.findOptionalById("noMember")).isEmpty();
+        assertThatThrownBy(() -> bloomRepository.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(bloomRepository.getRejectedCount()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("나중에 save / saveAll 한 회원도 Filter 에 들어간다 (트랜젝션 안이어도)")
+    void putOnSave() {
+        new TransactionTemplate(new DataSourceTransactionManager(dataSource))
+                .executeWithoutResult(status -> bloomRepository.save(new Member(MEMBER_B, 20000)));
+        bloomRepository.saveAll(List.of(new Member("memberC", 30000)));
+
+        assertThat(bloomRepository.findOptionalById(MEMBER_B)).map(Member::getMoney).contains(20000);
+        assertThat(bloomRepository.findOptionalById("memberC")).map(Member::getMoney).contains(30000);
+        assertThat(bloomRepository.getRejectedCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("지운 회원은 rebuild 전까지 DB 로 가고, rebuild 후에는 Filter 에서 막힌다")
+    void rebuildAfterDelete() {
+        bloomRepository.delete(MEMBER_A);
+
+        assertThat(bloomRepository.findOptionalById(MEMBER_A)).isEmpty();
+        assertThat(bloomRepository.getFalsePositiveCount()).isEqualTo(1);
+        assertThat(bloomRepository.getDeletedSinceRebuild()).isEqualTo(1);
+
+        bloomRepository.rebuild();
+
+        assertThat(bloomRepository.findOptionalById(MEMBER_A)).isEmpty();
+        assertThat(bloomRepository.getRejectedCount()).isEqualTo(1);
+        assertThat(bloomRepository.getDeletedSinceRebuild()).isZero();
+    }
+
+    @Test
+    @DisplayName("Bloom Filter - 넣은 ID 는 항상 true, 넣지 않은 ID 의 오탐률은 설정값 근처")
+    void falsePositiveRate() {
+        MemberIdBloomFilter filter = new MemberIdBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("member" + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("member" + i)).isTrue();
+            if (filter.mightContain("probe" + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(300); // 1% = 100 개, 넉넉하게
+    }
+
+    @AfterEach
+    void afterEach() {
+        dbRepository.delete(MEMBER_A);
+        dbRepository.delete(MEMBER_B);
+        dbRepository.delete("memberC");
+    }
+}
@@ -0,0 +1,127 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 캐시는 DB 에 상관없이 동작을 확인할 수 있으므로 내장 H2 (mem) 로 테스트한다
+ */
+public class CachingMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+
+    private DataSource dataSource;
+    private MemberRepository dbRepository;
+    private CachingMemberRepository cachingRepository;
+    private TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:cache;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        cachingRepository = new CachingMemberRepository(dbRepository, 2, Duration.ofMinutes(1));
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        dbRepository.save(new Member(MEMBER_A, 10000));
+    }
+
+    @Test
+    @DisplayName("두번째 조회부터는 캐시에서 꺼낸다")
+    void readThrough() {
+        cachingRepository.findById(MEMBER_A);
+        Member member = cachingRepository.findById(MEMBER_A);
+
+        assertThat(member.getMoney()).isEqualTo(10000);
+        assertThat(cachingRepository.getMissCount()).isEqualTo(1);
+        assertThat(cachingRepository.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("commit 된 update 는 캐시를 무효화한다")
+    void invalidateAfterCommit() {
+        cachingRepository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            cachingRepository.update(MEMBER_A, 20000);
+            // 같은 트랜젝션 안에서는 방금 쓴 값을 본다
+            assertThat(cachingRepository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+        });
+
+        assertThat(cachingRepository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    @DisplayName("rollback 된 update 는 캐시에 들어가지 않는다")
+    void rollbackNeverPoisons() {
+        cachingRepository.findById(MEMBER_A);
+
+        txTemplate.executeWithoutResult(status -> {
+            cachingRepository.update(MEMBER_A, 20000);
+            cachingRepository.findById(MEMBER_A);
+            status.setRollbackOnly();
+        });
+
+        assertThat(cachingRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(dbRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("꺼낸 Member 를 바꿔도 캐시된 값은 바뀌지 않는다")
+    void returnsCopy() {
+        cachingRepository.findById(MEMBER_A).setMoney(0);
+
+        assertThat(cachingRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("최대 개수를 넘으면 LRU 로 밀려나고, TTL 이 지나면 다시 DB 에서 읽는다")
+    void evictionAndTtl() {
+        dbRepository.save(new Member("memberB", 10000));
+        dbRepository.save(new Member("memberC", 10000));
+
+        cachingRepository.findById(MEMBER_A);
+        cachingRepository.findById("memberB");
+        cachingRepository.findById("memberC");
+        assertThat(cachingRepository.getEvictionCount()).isEqualTo(1);
+        assertThat(cachingRepository.size()).isEqualTo(2);
+
+        CachingMemberRepository expiring = new CachingMemberRepository(dbRepository, 10, Duration.ZERO);
+        expiring.findById(MEMBER_A);
+        expiring.findById(MEMBER_A);
+        assertThat(expiring.getHitCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("delete 후에는 캐시에서도 사라진다")
+    void delete() {
+        cachingRepository.findById(MEMBER_A);
+        cachingRepository.delete(MEMBER_A);
+
+        assertThatThrownBy(() -> cachingRepository.findById(MEMBER_A))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @AfterEach
+    void afterEach() {
+        dbRepository.delete(MEMBER_A);
+        dbRepository.delete("memberB");
+        dbRepository.delete("memberC");
+    }
+}
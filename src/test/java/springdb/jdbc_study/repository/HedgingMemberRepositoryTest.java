@@ -0,0 +1,194 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ Primary / Replica 를 각각 내장 H2 (mem) 로 두고, 누가 이겼는지 보려고 두 DB 의 잔액을 다르게 넣어둔다
+ - 느린 Primary 는 cancel 될 때까지 executeQuery 가 멈춰있는 Statement 로 흉내낸다
+ */
+class HedgingMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+
+    private DataSource primary;
+    private DataSource replica;
+    private HedgingMemberRepository hedgingRepository;
+
+    @BeforeEach
+    void before() {
+        primary = embedded("hedgePrimary");
+        replica = embedded("hedgeReplica");
+        new MemberRepositoryV4_2(primary).save(new Member(MEMBER_A, 10000));
+        new MemberRepositoryV4_2(replica).save(new Member(MEMBER_A, 9000));
+    }
+
+    @Test
+    @DisplayName("Primary 가 hedge 지연 안에 답하면 Replica 로 보내지 않는다")
+    void primaryInTime() {
+        hedgingRepository = hedging(primary, Duration.ofSeconds(1));
+
+        assertThat(hedgingRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(hedgingRepository.getHedgeCount()).isZero();
+        assertThat(hedgingRepository.getPrimaryWinCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Primary 가 늦으면 Replica 결과를 쓰고, 늦은 Primary 조회는 cancel 된다")
+    void hedgeToReplica() throws InterruptedException {
+        StallingDataSource stallingPrimary = new StallingDataSource(primary);
+        hedgingRepository = hedging(stallingPrimary, Duration.ofMillis(100));
+
+        assertThat(hedgingRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(hedgingRepository.getHedgeCount()).isEqualTo(1);
+        assertThat(hedgingRepository.getReplicaWinCount()).isEqualTo(1);
+
+        assertThat(stallingPrimary.cancelled.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(hedgingRepository.getCancelCount()).isEqualTo(1);
+        // cancel 된 Primary 도 (cancel 될 때까지의 시간으로) 샘플에 남는다
+        assertThat(hedgingRepository.getPrimaryLatency().getCount()).isEqualTo(1);
+        assertThat(hedgingRepository.getPrimaryLatency().getMaxNanos()).isGreaterThanOrEqualTo(Duration.ofMillis(100).toNanos());
+    }
+
+    @Test
+    @DisplayName("Replica 에 아직 회원이 없으면 진 것으로 보고, Primary 를 cancel 하지 않고 기다린다")
+    void replicaMissIsNotAWin() {
+        new MemberRepositoryV4_2(replica).delete(MEMBER_A); // 아직 복제되지 않은 회원
+        StallingDataSource slowPrimary = new StallingDataSource(primary, Duration.ofMillis(300));
+        hedgingRepository = hedging(slowPrimary, Duration.ofMillis(50));
+
+        assertThat(hedgingRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(hedgingRepository.getHedgeCount()).isEqualTo(1);
+        assertThat(hedgingRepository.getPrimaryWinCount()).isEqualTo(1);
+        assertThat(hedgingRepository.getCancelCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Primary 조회는 호출 쓰레드에서 실행된다")
+    void primaryOnCallerThread() {
+        Thread[] executedOn = new Thread[1];
+        DataSource recordingPrimary = new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                executedOn[0] = Thread.currentThread();
+                return super.getConnection();
+            }
+        };
+        hedgingRepository = hedging(recordingPrimary, Duration.ofSeconds(1));
+
+        hedgingRepository.findById(MEMBER_A);
+        assertThat(executedOn[0]).isSameAs(Thread.currentThread());
+    }
+
+    @Test
+    @DisplayName("회원이 없으면 기존과 같이 NoSuchElementException")
+    void notFound() {
+        hedgingRepository = hedging(primary, Duration.ofSeconds(1));
+
+        assertThatThrownBy(() -> hedgingRepository.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    @DisplayName("샘플이 충분히 쌓이면 hedge 지연은 Primary 응답시간의 percentile 로 바뀐다")
+    void delayFollowsPercentile() {
+        hedgingRepository = hedging(primary, Duration.ofSeconds(10));
+
+        for (int i = 0; i < HedgingMemberRepository.MIN_SAMPLES + HedgingMemberRepository.RECOMPUTE_EVERY; i++) {
+            hedgingRepository.findById(MEMBER_A);
+        }
+
+        assertThat(hedgingRepository.getPrimaryLatency().getCount()).isGreaterThanOrEqualTo(HedgingMemberRepository.MIN_SAMPLES);
+        assertThat(hedgingRepository.getHedgeDelayNanos()).isLessThan(Duration.ofSeconds(10).toNanos());
+    }
+
+    @AfterEach
+    void afterEach() {
+        hedgingRepository.close();
+        new MemberRepositoryV4_2(primary).delete(MEMBER_A);
+        new MemberRepositoryV4_2(replica).delete(MEMBER_A);
+    }
+
+    private HedgingMemberRepository hedging(DataSource primaryDataSource, Duration initialDelay) {
+        return new HedgingMemberRepository(new MemberRepositoryV4_2(primaryDataSource), primaryDataSource, replica, 95, initialDelay);
+    }
+
+    private DataSource embedded(String name) {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        return dataSource;
+    }
+
+    /*
+     executeQuery 가 stall 동안 멈춰있는 DataSource - 그 안에 cancel 이 불리면 실패, 아니면 그대로 조회한다
+     */
+    static class StallingDataSource extends DelegatingDataSource {
+
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        private final Duration stall;
+
+        StallingDataSource(DataSource target) {
+            this(target, Duration.ofSeconds(5));
+        }
+
+        StallingDataSource(DataSource target, Duration stall) {
+            super(target);
+            this.stall = stall;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            Connection con = super.getConnection();
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(con, method, args);
+                        if ("prepareStatement".equals(method.getName())) {
+                            return stalling((PreparedStatement) result);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement stalling(PreparedStatement pstmt) {
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        if ("executeQuery".equals(method.getName()) && cancelled.await(stall.toMillis(), TimeUnit.MILLISECONDS)) {
+                            throw new SQLException("statement cancelled");
+                        }
+                        if ("cancel".equals(method.getName())) {
+                            cancelled.countDown();
+                        }
+                        return invoke(pstmt, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, java.lang.reflect.Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.service.MemberServiceV4_Ledger;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ member_ledger 테이블이 필요하므로 schema.sql 로 만든 내장 H2 (mem) 로 테스트한다
+ */
+public class LedgerMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+
+    private JdbcTemplate template;
+    private LedgerMemberRepository ledgerRepository;
+    private MemberServiceV4_Ledger memberService;
+
+    @BeforeEach
+    void before() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:ledger;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        template = new JdbcTemplate(dataSource);
+
+        ledgerRepository = new LedgerMemberRepository(dataSource);
+        memberService = new MemberServiceV4_Ledger(ledgerRepository);
+
+        ledgerRepository.save(new Member(MEMBER_A, 10000));
+        ledgerRepository.save(new Member(MEMBER_B, 10000));
+    }
+
+    @Test
+    @DisplayName("이체는 원장에만 쌓이고, 잔액은 스냅샷 + 원장 꼬리로 보인다")
+    void transferAppendsEntries() {
+        memberService.bizLogic(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(ledgerRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+        assertThat(snapshotOf(MEMBER_A)).isEqualTo(10000); // member.money 는 그대로
+        assertThat(ledgerRepository.getTailSize()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("upsert - 있는 회원은 차액을 원장에 쌓고, 없는 회원은 새로 등록한다")
+    void upsert() {
+        ledgerRepository.addMoney(MEMBER_A, 500);
+
+        ledgerRepository.upsertAll(List.of(new Member(MEMBER_A, 7000), new Member("memberC", 3000)));
+
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(snapshotOf(MEMBER_A)).isEqualTo(10000); // 스냅샷은 그대로, 차액 -3500 이 원장에
+        assertThat(ledgerRepository.findById("memberC").getMoney()).isEqualTo(3000);
+    }
+
+    @Test
+    @DisplayName("압축 전후로 보이는 잔액은 같고, 원장 이력은 남는다")
+    void compactKeepsBalance() {
+        memberService.bizLogic(MEMBER_A, MEMBER_B, 2000);
+        ledgerRepository.addMoney(MEMBER_B, 500);
+
+        assertThat(ledgerRepository.compact()).isEqualTo(3);
+
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(ledgerRepository.findById(MEMBER_B).getMoney()).isEqualTo(12500);
+        assertThat(snapshotOf(MEMBER_B)).isEqualTo(12500);
+        assertThat(ledgerRepository.getTailSize()).isZero();
+        assertThat(template.queryForObject("select count(*) from member_ledger", Integer.class)).isEqualTo(3);
+        assertThat(ledgerRepository.compact()).isZero();
+    }
+
+    @Test
+    @DisplayName("잔액보다 많이 보내거나 없는 회원에게 보내면 아무것도 쌓이지 않는다")
+    void rejectedTransfer() {
+        assertThatThrownBy(() -> memberService.bizLogic(MEMBER_A, MEMBER_B, 20000))
+                .isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> memberService.bizLogic(MEMBER_A, "noMember", 1000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(ledgerRepository.getTailSize()).isZero();
+        assertThat(ledgerRepository.addMoney(MEMBER_A, -10001)).isFalse();
+        assertThat(ledgerRepository.addMoney(MEMBER_A, -10000)).isTrue();
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isZero();
+    }
+
+    @Test
+    @DisplayName("update 는 차액을 조정 항목으로 쌓는다")
+    void updateAppendsAdjustment() {
+        ledgerRepository.update(MEMBER_A, 3000);
+
+        Member member = ledgerRepository.findById(MEMBER_A);
+        assertThat(member.getMoney()).isEqualTo(3000);
+        assertThat(member.getVersion()).isEqualTo(1);
+        assertThat(template.queryForObject("select amount from member_ledger where member_id = ?", Integer.class, MEMBER_A))
+                .isEqualTo(-7000);
+    }
+
+    @Test
+    @DisplayName("updateIfVersion 은 version 이 같을 때만 차액을 쌓는다")
+    void updateIfVersion() {
+        Member read = ledgerRepository.findById(MEMBER_A);
+
+        assertThat(ledgerRepository.updateIfVersion(MEMBER_A, 4000, read.getVersion())).isTrue();
+        assertThat(ledgerRepository.updateIfVersion(MEMBER_A, 0, read.getVersion())).isFalse(); // 이미 version 이 올라갔다
+        assertThat(ledgerRepository.updateIfVersion("noMember", 0, 0)).isFalse();
+
+        Member member = ledgerRepository.findById(MEMBER_A);
+        assertThat(member.getMoney()).isEqualTo(4000);
+        assertThat(member.getVersion()).isEqualTo(read.getVersion() + 1);
+    }
+
+    @Test
+    @DisplayName("updateIfVersion - 읽은 뒤 들어온 입금은 version 을 올리므로 덮어쓰지 않는다, 압축은 version 을 바꾸지 않는다")
+    void updateIfVersionDetectsCredit() {
+        Member read = ledgerRepository.findById(MEMBER_A);
+        ledgerRepository.addMoney(MEMBER_A, 500);
+
+        assertThat(ledgerRepository.updateIfVersion(MEMBER_A, 9000, read.getVersion())).isFalse();
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isEqualTo(10500);
+
+        Member reread = ledgerRepository.findById(MEMBER_A);
+        ledgerRepository.compact();
+        assertThat(ledgerRepository.findById(MEMBER_A).getVersion()).isEqualTo(reread.getVersion());
+        assertThat(ledgerRepository.updateIfVersion(MEMBER_A, 9000, reread.getVersion())).isTrue();
+        assertThat(ledgerRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+    }
+
+    @Test
+    @DisplayName("findPageAfter 는 limit 이 0 이하면 예외")
+    void pageLimit() {
+        assertThatThrownBy(() -> ledgerRepository.findPageAfter(null, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @AfterEach
+    void afterEach() {
+        ledgerRepository.delete(MEMBER_A);
+        ledgerRepository.delete(MEMBER_B);
+        ledgerRepository.delete("memberC");
+    }
+
+    private int snapshotOf(String memberId) {
+        return template.queryForObject("select money from member where member_id = ?", Integer.class, memberId);
+    }
+}
@@ -0,0 +1,163 @@
+package springdb.jdbc_study.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ MemberRepository 인터페이스에 새로 추가되는 기능들을 V4_2 기준으로 확인한다
+ */
+@Slf4j
+public class MemberRepositoryV4_2Test {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+    static final String MEMBER_C = "memberC";
+
+    private MemberRepository memberRepository;
+
+    @BeforeEach
+    void before() {
+        // version 컬럼 등 schema.sql 이 필요하므로 로컬 H2 서버 대신 내장 H2 (mem) 로
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:repositoryV4_2;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        memberRepository = new MemberRepositoryV4_2(dataSource, 2); // batch 가 여러번 나눠지는 것까지 확인
+    }
+
+    @Test
+    @DisplayName("saveAll - batch 크기를 넘어도 모두 저장된다")
+    void saveAll() {
+        memberRepository.saveAll(List.of(
+                new Member(MEMBER_A, 10000),
+                new Member(MEMBER_B, 20000),
+                new Member(MEMBER_C, 30000)));
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(30000);
+    }
+
+    @Test
+    @DisplayName("saveAll - 중복 키는 기존과 같이 예외 변환기를 거친다")
+    void saveAllDuplicateKey() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        assertThatThrownBy(() -> memberRepository.saveAll(List.of(new Member(MEMBER_A, 10000))))
+                .isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    @DisplayName("upsert - 없으면 등록, 있으면 money 를 덮어쓰고 version 을 올린다")
+    void upsert() {
+        memberRepository.upsert(new Member(MEMBER_A, 10000));
+        Member inserted = memberRepository.findById(MEMBER_A);
+        assertThat(inserted.getMoney()).isEqualTo(10000);
+
+        memberRepository.upsert(new Member(MEMBER_A, 20000));
+        Member updated = memberRepository.findById(MEMBER_A);
+        assertThat(updated.getMoney()).isEqualTo(20000);
+        assertThat(updated.getVersion()).isEqualTo(inserted.getVersion() + 1); // 낙관적 락도 바뀐 것을 알아챈다
+    }
+
+    @Test
+    @DisplayName("upsertAll - 있는 회원 / 없는 회원이 섞여도 batch 크기를 넘어 모두 반영된다")
+    void upsertAll() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        memberRepository.upsertAll(List.of(
+                new Member(MEMBER_A, 11000),
+                new Member(MEMBER_B, 20000),
+                new Member(MEMBER_C, 30000)));
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(11000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+        assertThat(memberRepository.findById(MEMBER_C).getMoney()).isEqualTo(30000);
+    }
+
+    @Test
+    @DisplayName("findAll - fetchSize 보다 많아도 Stream 으로 모두 읽고, close 하면 자원이 반환된다")
+    void findAllStream() {
+        memberRepository.saveAll(List.of(
+                new Member(MEMBER_A, 10000),
+                new Member(MEMBER_B, 20000),
+                new Member(MEMBER_C, 30000)));
+
+        Set<String> ids = Set.of(MEMBER_A, MEMBER_B, MEMBER_C);
+        try (Stream<Member> members = memberRepository.findAll(1)) {
+            int total = members.filter(member -> ids.contains(member.getMemberId()))
+                    .mapToInt(Member::getMoney)
+                    .sum();
+            assertThat(total).isEqualTo(60000);
+        }
+    }
+
+    @Test
+    @DisplayName("findAllById - batch 크기로 잘라도 모두 조회하고, 중복 / 없는 ID 는 빠진다")
+    void findAllById() {
+        memberRepository.saveAll(List.of(
+                new Member(MEMBER_A, 10000),
+                new Member(MEMBER_B, 20000),
+                new Member(MEMBER_C, 30000)));
+
+        List<Member> members = memberRepository.findAllById(List.of(MEMBER_A, MEMBER_B, MEMBER_A, "noMember", MEMBER_C));
+
+        assertThat(members).extracting(Member::getMemberId).containsExactlyInAnyOrder(MEMBER_A, MEMBER_B, MEMBER_C);
+        assertThat(memberRepository.findAllById(List.of())).isEmpty();
+    }
+
+    @Test
+    @DisplayName("findOptionalById - 있으면 회원, 없으면 예외 없이 Optional.empty()")
+    void findOptionalById() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+
+        assertThat(memberRepository.findOptionalById(MEMBER_A)).map(Member::getMoney).contains(10000);
+        assertThat(memberRepository.findOptionalById("noMember")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("findPageAfter - 다음 페이지 cursor 로 이어서 읽고, 마지막 페이지는 cursor 가 없다")
+    void findPageAfter() {
+        memberRepository.saveAll(List.of(
+                new Member(MEMBER_A, 10000),
+                new Member(MEMBER_B, 20000),
+                new Member(MEMBER_C, 30000)));
+
+        // memberA 바로 앞에서 시작 (다른 테스트의 데이터와 섞이지 않도록 memberC 까지만 본다)
+        MemberPage first = memberRepository.findPageAfter("member", 2);
+        assertThat(first.getMembers()).extracting(Member::getMemberId).containsExactly(MEMBER_A, MEMBER_B);
+        assertThat(first.getNextCursor()).isEqualTo(MEMBER_B);
+
+        MemberPage second = memberRepository.findPageAfter(first.getNextCursor(), 1);
+        assertThat(second.getMembers()).extracting(Member::getMemberId).containsExactly(MEMBER_C);
+    }
+
+    @Test
+    @DisplayName("findPageAfter - limit 이 0 이하면 예외")
+    void findPageAfterRejectsNonPositiveLimit() {
+        assertThatThrownBy(() -> memberRepository.findPageAfter(null, 0)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> memberRepository.findPageAfter(MEMBER_A, -1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_C);
+    }
+}
@@ -0,0 +1,179 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 첫 DB 조회를 latch 로 붙잡아 두고, 그 사이에 들어온 조회가 합쳐지는지 확인한다 (내장 H2 mem)
+ */
+class SingleFlightMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+    static final int THREADS = 8;
+
+    private DataSource dataSource;
+    private MemberRepository dbRepository;
+    private GatedMemberRepository gatedRepository;
+    private SingleFlightMemberRepository singleFlightRepository;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:singleFlight;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        dbRepository = new MemberRepositoryV4_2(dataSource);
+        gatedRepository = new GatedMemberRepository(dbRepository);
+        singleFlightRepository = new SingleFlightMemberRepository(gatedRepository);
+        executor = Executors.newFixedThreadPool(THREADS);
+
+        dbRepository.save(new Member(MEMBER_A, 10000));
+    }
+
+    @Test
+    @DisplayName("동시에 들어온 같은 회원 조회는 DB 조회 한번을 나눠 받는다")
+    void coalesce() throws Exception {
+        List<Future<Member>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(executor.submit(() -> singleFlightRepository.findById(MEMBER_A)));
+        }
+        awaitCoalesced(THREADS - 1);
+        gatedRepository.release();
+
+        List<Member> members = new ArrayList<>();
+        for (Future<Member> result : results) {
+            members.add(result.get(5, TimeUnit.SECONDS));
+        }
+        for (int i = 0; i < members.size(); i++) {
+            assertThat(members.get(i).getMoney()).isEqualTo(10000);
+            for (int j = i + 1; j < members.size(); j++) {
+                assertThat(members.get(i)).isNotSameAs(members.get(j)); // leader 를 포함해 모두 자기 객체를 받는다
+            }
+        }
+        assertThat(gatedRepository.findCount.get()).isEqualTo(1);
+        assertThat(singleFlightRepository.getCoalescingRatio()).isEqualTo((double) (THREADS - 1) / THREADS);
+    }
+
+    @Test
+    @DisplayName("조회가 끝나면 잊어버린다 - 다음 조회는 다시 DB 로 간다")
+    void notACache() {
+        gatedRepository.release();
+
+        singleFlightRepository.findById(MEMBER_A);
+        singleFlightRepository.findById(MEMBER_A);
+
+        assertThat(gatedRepository.findCount.get()).isEqualTo(2);
+        assertThat(singleFlightRepository.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("쓰기가 끝난 뒤 시작한 조회는, 쓰기 전에 시작된 조회에 합쳐지지 않는다")
+    void writeDetachesInFlight() throws Exception {
+        Future<Member> stale = executor.submit(() -> singleFlightRepository.findById(MEMBER_A));
+        gatedRepository.awaitFirstFind();
+
+        singleFlightRepository.update(MEMBER_A, 20000);
+        assertThat(singleFlightRepository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+
+        gatedRepository.release();
+        stale.get(5, TimeUnit.SECONDS);
+        assertThat(singleFlightRepository.getCoalescedCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("트랜젝션 안의 조회는 합치지 않는다")
+    void bypassInTransaction() {
+        gatedRepository.release();
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> {
+            singleFlightRepository.update(MEMBER_A, 20000);
+            assertThat(singleFlightRepository.findById(MEMBER_A).getMoney()).isEqualTo(20000);
+        });
+
+        assertThat(singleFlightRepository.getCallCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("leader 의 예외는 같이 기다린 쓰레드도 그대로 받는다")
+    void shareFailure() {
+        gatedRepository.release();
+
+        assertThatThrownBy(() -> singleFlightRepository.findById("noMember"))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @AfterEach
+    void afterEach() {
+        gatedRepository.release();
+        executor.shutdownNow();
+        dbRepository.delete(MEMBER_A);
+    }
+
+    private void awaitCoalesced(long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (singleFlightRepository.getCoalescedCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    /*
+     첫 findById 만 release 될 때까지 붙잡아 둔다
+     */
+    static class GatedMemberRepository extends ForwardingMemberRepository {
+
+        final AtomicInteger findCount = new AtomicInteger();
+        private final AtomicBoolean first = new AtomicBoolean(true);
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+
+        GatedMemberRepository(MemberRepository delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public Member findById(String memberId) {
+            findCount.incrementAndGet();
+            if (first.compareAndSet(true, false)) {
+                entered.countDown();
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return delegate.findById(memberId);
+        }
+
+        void awaitFirstFind() throws InterruptedException {
+            entered.await(5, TimeUnit.SECONDS);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+    }
+}
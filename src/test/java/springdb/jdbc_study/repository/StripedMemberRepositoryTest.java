@@ -0,0 +1,129 @@
+package springdb.jdbc_study.repository;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.service.MemberServiceV4;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ member_stripe 테이블이 필요하므로 schema.sql 로 만든 내장 H2 (mem) 로 테스트한다
+ */
+public class StripedMemberRepositoryTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+    static final int STRIPES = 4;
+
+    private DataSource dataSource;
+    private StripedMemberRepository memberRepository;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:striped;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new StripedMemberRepository(new MemberRepositoryV4_2(dataSource), dataSource, STRIPES);
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+    }
+
+    @Test
+    @DisplayName("입금은 stripe 하나에 들어가고, 조회는 모든 stripe 의 합이다")
+    void credit() {
+        for (int i = 0; i < 100; i++) {
+            assertThat(memberRepository.addMoney(MEMBER_B, 10)).isTrue();
+        }
+
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1000);
+        assertThat(stripeCount(MEMBER_B)).isEqualTo(STRIPES);
+        assertThat(new MemberRepositoryV4_2(dataSource).findById(MEMBER_B).getMoney()).isZero(); // 회원 row 의 money 는 쓰지 않는다
+    }
+
+    @Test
+    @DisplayName("출금은 한 stripe 로 모자라면 여러 stripe 에서 나눠 빼고, 합보다 많이는 뺄 수 없다")
+    void debitAcrossStripes() {
+        for (int i = 0; i < 100; i++) {
+            memberRepository.addMoney(MEMBER_B, 10);
+        }
+
+        assertThat(memberRepository.addMoney(MEMBER_B, -900)).isTrue();
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(100);
+
+        assertThat(memberRepository.addMoney(MEMBER_B, -101)).isFalse();
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(100);
+    }
+
+    @Test
+    @DisplayName("MemberServiceV4 는 그대로 쓸 수 있다")
+    void serviceUnchanged() {
+        MemberServiceV4 memberService = new MemberServiceV4(memberRepository);
+        TransactionTemplate txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        txTemplate.executeWithoutResult(status -> memberService.bizLogicAtomic(MEMBER_A, MEMBER_B, 2000));
+
+        List<Member> members = memberRepository.findAllById(List.of(MEMBER_A, MEMBER_B));
+        assertThat(members).extracting(Member::getMoney).containsExactlyInAnyOrder(8000, 2000);
+    }
+
+    @Test
+    @DisplayName("update 는 절대값으로 덮어쓰고, delete 는 stripe 까지 지운다")
+    void updateAndDelete() {
+        memberRepository.addMoney(MEMBER_A, 500);
+        memberRepository.update(MEMBER_A, 300);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(300);
+
+        memberRepository.delete(MEMBER_A);
+        assertThat(stripeCount(MEMBER_A)).isZero();
+    }
+
+    @Test
+    @DisplayName("updateIfVersion 은 회원 row 의 version 이 같을 때만 stripe 들을 덮어쓴다")
+    void updateIfVersion() {
+        Member read = memberRepository.findById(MEMBER_A);
+
+        assertThat(memberRepository.updateIfVersion(MEMBER_A, read.getMoney() - 1000, read.getVersion())).isTrue();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+
+        assertThat(memberRepository.updateIfVersion(MEMBER_A, 0, read.getVersion())).isFalse(); // 이미 version 이 올라갔다
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(stripeCount(MEMBER_A)).isEqualTo(STRIPES);
+    }
+
+    @Test
+    @DisplayName("읽은 뒤 입금이 들어오면 updateIfVersion 은 실패하고 입금은 남는다")
+    void updateIfVersionDetectsCredit() {
+        Member read = memberRepository.findById(MEMBER_A);
+        memberRepository.addMoney(MEMBER_A, 500); // 회원 row 는 건드리지 않는 입금
+
+        assertThat(memberRepository.updateIfVersion(MEMBER_A, read.getMoney() - 1000, read.getVersion())).isFalse();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10500);
+
+        Member reread = memberRepository.findById(MEMBER_A);
+        assertThat(memberRepository.updateIfVersion(MEMBER_A, reread.getMoney() - 1000, reread.getVersion())).isTrue();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+    }
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    private int stripeCount(String memberId) {
+        return new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from member_stripe where member_id = ?", Integer.class, memberId);
+    }
+}
@@ -0,0 +1,84 @@
+package springdb.jdbc_study.repository.exception;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.BadSqlGrammarException;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.support.PreparedStatementCache;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ H2 ErrorCode 표로 변환되는지, 예상된 예외는 stack trace 없이 만들어지는지 확인한다
+ */
+class H2ErrorCodeTranslatorTest {
+
+    private final H2ErrorCodeTranslator translator = new H2ErrorCodeTranslator();
+
+    @Test
+    @DisplayName("H2 ErrorCode 를 Spring 예외로 바꾼다 - 원인 SQLException 은 cause 로 남는다")
+    void translateByErrorCode() {
+        SQLException duplicate = h2Exception(23505);
+
+        DataAccessException translated = translator.translate("SAVE", "insert ...", duplicate);
+
+        assertThat(translated).isInstanceOf(DuplicateKeyException.class).hasCause(duplicate);
+        assertThat(translator.translate("T", "S", h2Exception(23502))).isInstanceOf(DataIntegrityViolationException.class);
+        assertThat(translator.translate("T", "S", h2Exception(42122))).isInstanceOf(BadSqlGrammarException.class);
+        assertThat(translator.translate("T", "S", h2Exception(50200))).isInstanceOf(CannotAcquireLockException.class);
+    }
+
+    @Test
+    @DisplayName("기본은 stack trace 를 만들고, 켜면 중복 키 같은 예상된 예외만 stack trace 를 만들지 않는다")
+    void stacklessControlFlow() {
+        assertThat(translator.translate("T", "S", h2Exception(23505)).getStackTrace()).isNotEmpty();
+
+        H2ErrorCodeTranslator stackless = new H2ErrorCodeTranslator(true);
+        assertThat(stackless.translate("T", "S", h2Exception(23505)).getStackTrace()).isEmpty();
+        assertThat(stackless.translate("T", "S", h2Exception(42122)).getStackTrace()).isNotEmpty();
+    }
+
+    @Test
+    @DisplayName("표에 없는 코드는 SQLState 로 변환한다")
+    void fallbackToSqlState() {
+        SQLException unknown = new SQLException("unknown", "23000", 1);
+
+        assertThat(H2ErrorCodeTranslator.categoryOf(1)).isNull();
+        assertThat(translator.translate("T", "S", unknown)).isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    @DisplayName("MemberRepositoryV4_2 에 생성자로 넣어서 쓴다 - 실제 H2 중복 키")
+    void repositoryUsesTranslator() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:h2Translator;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        MemberRepository memberRepository = new MemberRepositoryV4_2(dataSource, MemberRepositoryV4_2.DEFAULT_BATCH_SIZE,
+                PreparedStatementCache.DEFAULT_MAX_STATEMENTS_PER_CONNECTION, new H2ErrorCodeTranslator(true));
+
+        memberRepository.save(new Member("memberA", 10000));
+        try {
+            assertThatThrownBy(() -> memberRepository.save(new Member("memberA", 10000)))
+                    .isInstanceOf(DuplicateKeyException.class)
+                    .satisfies(e -> assertThat(e.getStackTrace()).isEmpty());
+        } finally {
+            memberRepository.delete("memberA");
+        }
+    }
+
+    private static SQLException h2Exception(int errorCode) {
+        return new SQLException("h2 error " + errorCode, "HY000", errorCode);
+    }
+}
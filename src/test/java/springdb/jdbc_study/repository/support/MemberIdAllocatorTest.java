@@ -0,0 +1,80 @@
+package springdb.jdbc_study.repository.support;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ member_id_block_seq 가 필요하므로 schema.sql 로 만든 내장 H2 (mem) 로 테스트한다
+ */
+class MemberIdAllocatorTest {
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:idAllocator;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+    }
+
+    @Test
+    @DisplayName("블록 하나를 다 쓸 때까지는 DB 에 가지 않는다")
+    void oneRoundTripPerBlock() {
+        MemberIdAllocator allocator = new MemberIdAllocator(dataSource, "m", 100);
+
+        for (int i = 0; i < 250; i++) {
+            allocator.nextId();
+        }
+
+        assertThat(allocator.getBlockCount()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("blockSize 는 시퀀스 increment 를 넘을 수 없다")
+    void blockSizeWithinSequenceIncrement() {
+        assertThatThrownBy(() -> new MemberIdAllocator(dataSource, "m", MemberIdAllocator.SEQUENCE_INCREMENT + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("여러 쓰레드, 여러 발급기가 동시에 받아도 ID 는 겹치지 않고 10자를 넘지 않는다")
+    void uniqueAcrossThreadsAndAllocators() throws Exception {
+        MemberIdAllocator first = new MemberIdAllocator(dataSource, "m", 50);
+        MemberIdAllocator second = new MemberIdAllocator(dataSource, "m", 70); // 다른 서버 - blockSize 가 달라도 겹치지 않는다
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            MemberIdAllocator allocator = t % 2 == 0 ? first : second;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    ids.add(allocator.nextId());
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(ids).hasSize(8000);
+        assertThat(first.getBlockCount() + second.getBlockCount()).isGreaterThan(2); // 블록 경계를 여러번 넘었다
+        assertThat(ids).allSatisfy(id -> assertThat(id.length()).isLessThanOrEqualTo(MemberIdAllocator.MAX_MEMBER_ID_LENGTH));
+    }
+}
@@ -0,0 +1,102 @@
+package springdb.jdbc_study.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 여러 이체가 한 트랜젝션으로 묶여 commit 되는지, 실패한 이체만 되돌려지는지 확인한다
+ */
+public class GroupCommitTransferServiceTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+    static final String MEMBER_FOR_ERROR = "FOR_ERROR";
+
+    private MemberRepository memberRepository;
+    private GroupCommitTransferService transferService;
+
+    @BeforeEach
+    void before() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:groupCommit;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        transferService = new GroupCommitTransferService(new DataSourceTransactionManager(dataSource), memberRepository,
+                100, Duration.ofMillis(200)); // 테스트에서는 한 batch 로 모이도록 넉넉하게
+
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_FOR_ERROR, 10000));
+    }
+
+    @Test
+    @DisplayName("여러 이체가 모여서 한번에 commit 된다")
+    void groupCommit() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(transferService.submit(MEMBER_A, MEMBER_B, 100));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(11000);
+        assertThat(transferService.getTransferCount()).isEqualTo(10);
+        assertThat(transferService.getBatchCount()).isLessThan(10);
+    }
+
+    @Test
+    @DisplayName("실패한 이체는 savepoint 로 자기만 되돌리고, 같은 batch 의 다른 이체는 commit 된다")
+    void failedTransferDoesNotAbortBatch() {
+        CompletableFuture<Void> ok1 = transferService.submit(MEMBER_A, MEMBER_B, 1000);
+        CompletableFuture<Void> insufficient = transferService.submit(MEMBER_A, MEMBER_B, 1_000_000);
+        CompletableFuture<Void> validationError = transferService.submit(MEMBER_A, MEMBER_FOR_ERROR, 1000);
+        CompletableFuture<Void> ok2 = transferService.submit(MEMBER_B, MEMBER_A, 500);
+
+        ok1.join();
+        ok2.join();
+        assertThatThrownBy(insufficient::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(validationError::join).isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_FOR_ERROR).getMoney()).isEqualTo(10000); // 출금 후 예외 - savepoint 로 되돌려졌다
+    }
+
+    @Test
+    @DisplayName("close 후에는 더 받지 않는다")
+    void closed() {
+        transferService.close();
+
+        assertThatThrownBy(() -> transferService.submit(MEMBER_A, MEMBER_B, 100).join())
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @AfterEach
+    void afterEach() {
+        transferService.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_FOR_ERROR);
+    }
+}
@@ -0,0 +1,54 @@
+package springdb.jdbc_study.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+import springdb.jdbc_study.repository.support.MemberIdAllocator;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/*
+ 발급기로 받은 ID 로 가입하면 중복 키 복구 없이 모두 저장된다 (내장 H2 mem)
+ */
+class MemberJoinServiceTest {
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+    private MemberJoinService joinService;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:memberJoin;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        joinService = new MemberJoinService(memberRepository, new MemberIdAllocator(dataSource, "join", 10));
+    }
+
+    @Test
+    @DisplayName("join / joinAll 로 가입한 회원은 모두 저장된다")
+    void join() {
+        Member member = joinService.join(10000);
+        List<Member> members = joinService.joinAll(25, 1000);
+
+        assertThat(memberRepository.findById(member.getMemberId()).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findAllById(members.stream().map(Member::getMemberId).collect(Collectors.toList()))).hasSize(25);
+    }
+
+    @AfterEach
+    void afterEach() {
+        new JdbcTemplate(dataSource).update("delete from member where member_id like 'join%'");
+    }
+}
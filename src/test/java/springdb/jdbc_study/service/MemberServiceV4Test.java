@@ -9,6 +9,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.test.context.ActiveProfiles;
 import springdb.jdbc_study.domain.Member;
 import springdb.jdbc_study.repository.MemberRepository;
@@ -43,23 +46,30 @@ public class MemberServiceV4Test {
     private MemberServiceV4 memberService;
 
     /*
-     DataSource - application.properties 정보 작성 필수임!
+     DataSource - 원래는 application.properties 정보로 자동 등록 (여기서는 schema.sql 때문에 내장 H2 를 직접 등록)
      TxManager - 자동주입
       ---> 둘을 빼도 정상동작한다
      */
     @TestConfiguration
     static class TestConfig {
 
-        // DataSource 는 Spring Container 에서 가져와주자
-        @Autowired
-        private DataSource dataSource;
+        /*
+         V4_2 는 version 컬럼을 읽으므로 schema.sql 로 만든 내장 H2 (mem) 를 등록한다
+         - DataSource 를 직접 등록하면 Spring Boot 의 자동 등록 DataSource 는 물러나고, TxManager 는 이것으로 자동 등록된다
+         */
+        @Bean
+        DataSource dataSource() {
+            DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:memberServiceV4;DB_CLOSE_DELAY=-1", "sa", "");
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+            return dataSource;
+        }
 
         /*
          구현체 등록
          */
         @Bean
         MemberRepositoryV4_2 memberRepository() {
-            return new MemberRepositoryV4_2(dataSource);
+            return new MemberRepositoryV4_2(dataSource());
         }
 
         @Bean
@@ -122,6 +132,54 @@ public class MemberServiceV4Test {
     }
 
 
+    @Test
+    @DisplayName("상대값 이체 - 정상")
+    void accountTransferAtomicNormalSituation() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        memberService.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000);
+
+        // then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    @DisplayName("상대값 이체 - 잔액 부족이면 update count 0 으로 실패하고 아무것도 바뀌지 않는다")
+    void accountTransferAtomicInsufficientMoney() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        assertThatThrownBy(() -> memberService.accountTransferAtomic(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        // then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    @DisplayName("상대값 이체 - 이체 중 예외 발생시 출금도 롤백된다")
+    void accountTransferAtomicErrorSituation() {
+        //given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_FOR_ERROR, 10000));
+
+        // when
+        assertThatThrownBy(() -> memberService.accountTransferAtomic(MEMBER_A, MEMBER_FOR_ERROR, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        // then
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_FOR_ERROR).getMoney()).isEqualTo(10000);
+    }
+
+
     // DB 초기화로 지속 수행 (트랜젝션 롤백 쓰면 이런거 없어도 됨)
     @AfterEach
     void afterEach()  {
@@ -0,0 +1,118 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ A -> B, B -> A 이체를 동시에 수천번 돌려도 데드락 / Lock 타임아웃이 없어야 한다
+ - 여러 Connection 이 동시에 붙어야 하므로 내장 H2 (mem) 로 테스트한다
+ */
+@Slf4j
+public class MemberServiceV4_LockOrderTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+
+    static final int THREADS = 8;
+    static final int TRANSFERS = 2000;
+
+    private MemberRepository memberRepository;
+    private MemberServiceV4 memberService;
+    private TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void before() {
+        DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:lockOrder;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        memberService = new MemberServiceV4(memberRepository);
+        txTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        memberRepository.save(new Member(MEMBER_A, 1_000_000));
+        memberRepository.save(new Member(MEMBER_B, 1_000_000));
+    }
+
+    @Test
+    @DisplayName("교차 이체를 동시에 해도 모두 성공하고, 돈의 합은 그대로다")
+    void crossingTransfers() throws Exception {
+        AtomicInteger failed = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+
+        List<Future<?>> futures = new ArrayList<>(TRANSFERS);
+        for (int i = 0; i < TRANSFERS; i++) {
+            boolean aToB = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                try {
+                    txTemplate.executeWithoutResult(status -> {
+                        if (aToB) {
+                            memberService.bizLogicLockOrdered(MEMBER_A, MEMBER_B, 1);
+                        } else {
+                            memberService.bizLogicLockOrdered(MEMBER_B, MEMBER_A, 1);
+                        }
+                    });
+                } catch (RuntimeException e) {
+                    log.info("transfer failed", e);
+                    failed.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(failed.get()).isZero();
+        // 같은 수만큼 양쪽으로 보냈으므로 원래 금액 그대로
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1_000_000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(1_000_000);
+    }
+
+    @Test
+    @DisplayName("lock 순서와 이체 방향이 달라도 from 에서 빠지고 to 에 들어간다")
+    void reverseOrderTransfer() {
+        txTemplate.executeWithoutResult(status -> memberService.bizLogicLockOrdered(MEMBER_B, MEMBER_A, 2000));
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1_002_000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(998_000);
+    }
+
+    @Test
+    @DisplayName("자기 자신에게 보내는 이체는 거절되고 잔액은 그대로다")
+    void selfTransferRejected() {
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> memberService.bizLogicLockOrdered(MEMBER_A, MEMBER_A, 2000)))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1_000_000);
+    }
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+}
@@ -0,0 +1,127 @@
+package springdb.jdbc_study.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.repository.ForwardingMemberRepository;
+import springdb.jdbc_study.repository.MemberRepository;
+import springdb.jdbc_study.repository.MemberRepositoryV4_2;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ version 컬럼이 필요하므로 schema.sql 로 만든 내장 H2 (mem) 로 테스트한다
+ 충돌은 updateIfVersion 이 false 를 돌려주도록 감싸서 흉내낸다
+ */
+@Slf4j
+public class MemberServiceV4_OptimisticTest {
+
+    static final String MEMBER_A = "memberA";
+    static final String MEMBER_B = "memberB";
+
+    private DataSource dataSource;
+    private MemberRepository memberRepository;
+
+    @BeforeEach
+    void before() {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:optimistic;DB_CLOSE_DELAY=-1", "sa", "");
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+
+        memberRepository = new MemberRepositoryV4_2(dataSource);
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+    }
+
+    @Test
+    @DisplayName("충돌이 없으면 한번에 이체되고 version 이 올라간다")
+    void accountTransfer() {
+        MemberServiceV4_Optimistic memberService = service(memberRepository, 3);
+
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        Member findMemberA = memberRepository.findById(MEMBER_A);
+        Member findMemberB = memberRepository.findById(MEMBER_B);
+        assertThat(findMemberA.getMoney()).isEqualTo(8000);
+        assertThat(findMemberB.getMoney()).isEqualTo(12000);
+        assertThat(findMemberA.getVersion()).isEqualTo(1);
+        assertThat(findMemberB.getVersion()).isEqualTo(1);
+        assertThat(memberService.getConflictCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("충돌하면 롤백 후 처음부터 다시 시도한다")
+    void retryOnConflict() {
+        MemberServiceV4_Optimistic memberService = service(conflicting(1), 3);
+
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+        assertThat(memberService.getConflictCount()).isEqualTo(1);
+        assertThat(memberService.getRetryCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("maxAttempts 를 다 써도 충돌하면 포기하고, 돈은 그대로다")
+    void giveUpAfterMaxAttempts() {
+        MemberServiceV4_Optimistic memberService = service(conflicting(Integer.MAX_VALUE), 3);
+
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+        assertThat(memberService.getConflictCount()).isEqualTo(3);
+        assertThat(memberService.getRetryCount()).isEqualTo(2);
+        assertThat(memberService.getExhaustedCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("자기 자신에게 보내는 이체는 재시도 없이 바로 거절된다")
+    void selfTransferRejected() {
+        MemberServiceV4_Optimistic memberService = service(memberRepository, 3);
+
+        assertThatThrownBy(() -> memberService.accountTransfer(MEMBER_A, MEMBER_A, 2000))
+                .isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberService.getConflictCount()).isZero();
+    }
+
+    @AfterEach
+    void afterEach() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    private MemberServiceV4_Optimistic service(MemberRepository repository, int maxAttempts) {
+        return new MemberServiceV4_Optimistic(new DataSourceTransactionManager(dataSource), repository, maxAttempts, Duration.ZERO);
+    }
+
+    // 처음 conflicts 번의 updateIfVersion 은 다른 Tx 가 먼저 바꾼 것처럼 실패시킨다
+    private MemberRepository conflicting(int conflicts) {
+        AtomicInteger remaining = new AtomicInteger(conflicts);
+        return new ForwardingMemberRepository(memberRepository) {
+            @Override
+            public boolean updateIfVersion(String memberId, int updateMoney, long expectedVersion) {
+                if (remaining.getAndDecrement() > 0) {
+                    return false;
+                }
+                return super.updateIfVersion(memberId, updateMoney, expectedVersion);
+            }
+        };
+    }
+}
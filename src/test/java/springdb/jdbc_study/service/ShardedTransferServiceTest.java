@@ -0,0 +1,199 @@
+package springdb.jdbc_study.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import springdb.jdbc_study.domain.Member;
+import springdb.jdbc_study.domain.MemberPage;
+import springdb.jdbc_study.repository.MemberShard;
+import springdb.jdbc_study.repository.ShardedMemberRepository;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/*
+ 샤드 3개를 각각 다른 내장 H2 DB 로 두고 라우팅 / 샤드 이체를 확인한다
+ */
+class ShardedTransferServiceTest {
+
+    private ShardedMemberRepository memberRepository;
+    private ShardedTransferService transferService;
+
+    @BeforeEach
+    void before() {
+        List<MemberShard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:shard" + i + ";DB_CLOSE_DELAY=-1", "sa", "");
+            new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+            shards.add(new MemberShard("shard" + i, dataSource));
+        }
+        memberRepository = new ShardedMemberRepository(shards);
+        transferService = new ShardedTransferService(memberRepository);
+
+        memberRepository.saveAll(List.of(
+                new Member(memberA(), 10000),
+                new Member(memberB(), 10000),
+                new Member(memberC(), 10000)));
+    }
+
+    @Test
+    @DisplayName("회원은 자기 샤드 DB 에만 저장되고, 조회 / 페이지는 모든 샤드를 합쳐서 본다")
+    void routing() {
+        String memberA = memberA();
+        for (MemberShard shard : memberRepository.getShards()) {
+            int count = countMembers(shard, memberA);
+            assertThat(count).isEqualTo(shard == memberRepository.shardOf(memberA) ? 1 : 0);
+        }
+
+        assertThat(memberRepository.findAllById(List.of(memberA(), memberB(), memberC())))
+                .extracting(Member::getMemberId)
+                .containsExactlyInAnyOrder(memberA(), memberB(), memberC());
+
+        MemberPage first = memberRepository.findPageAfter("", 2);
+        MemberPage second = memberRepository.findPageAfter(first.getNextCursor(), 2);
+        assertThat(first.hasNext()).isTrue();
+        assertThat(second.hasNext()).isFalse();
+        assertThat(first.getMembers().size() + second.getMembers().size()).isEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("같은 샤드 이체는 한 트랜젝션으로 처리된다")
+    void sameShardTransfer() {
+        transferService.accountTransfer(memberA(), memberB(), 2000);
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(memberB()).getMoney()).isEqualTo(12000);
+        assertThat(intentCount(memberRepository.shardOf(memberA()))).isZero();
+    }
+
+    @Test
+    @DisplayName("다른 샤드 이체는 intent 를 DONE 으로 남기고 양쪽 잔액이 맞는다")
+    void crossShardTransfer() {
+        transferService.accountTransfer(memberA(), memberC(), 2000);
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(memberC()).getMoney()).isEqualTo(12000);
+        assertThat(intentStatus(memberRepository.shardOf(memberA()))).containsExactly(ShardedTransferService.DONE);
+    }
+
+    @Test
+    @DisplayName("잔액이 부족하면 어느 샤드에도 남는 것이 없다")
+    void insufficientBalance() {
+        assertThatThrownBy(() -> transferService.accountTransfer(memberA(), memberC(), 20000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(memberC()).getMoney()).isEqualTo(10000);
+        assertThat(intentCount(memberRepository.shardOf(memberA()))).isZero();
+    }
+
+    @Test
+    @DisplayName("입금할 회원이 없으면 출금을 되돌리고 intent 는 ABORTED")
+    void compensateWhenCreditFails() {
+        String noMember = memberOnShard("noMember", 1);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(memberA(), noMember, 2000))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(10000);
+        assertThat(intentStatus(memberRepository.shardOf(memberA()))).containsExactly(ShardedTransferService.ABORTED);
+    }
+
+    @Test
+    @DisplayName("되돌린 이체는 입금 샤드에 ABORTED tombstone 이 남아 뒤늦은 apply 가 입금하지 않는다")
+    void abortedTransferIsNotAppliedLater() {
+        String lateMember = memberOnShard("lateMember", 1);
+
+        assertThatThrownBy(() -> transferService.accountTransfer(memberA(), lateMember, 2000))
+                .isInstanceOf(IllegalStateException.class);
+        String transferId = new JdbcTemplate(memberRepository.shardOf(memberA()).getDataSource())
+                .queryForObject("select transfer_id from transfer_intent", String.class);
+
+        memberRepository.save(new Member(lateMember, 0)); // 되돌린 뒤에 회원이 생겼다
+        assertThat(transferService.apply(transferId, lateMember, 2000)).isFalse();
+        assertThat(transferService.recover(Duration.ZERO)).isZero();
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.findById(lateMember).getMoney()).isZero();
+    }
+
+    @Test
+    @DisplayName("출금 후 죽어서 PREPARED 로 남은 이체는 recover 가 끝내고, 다시 돌려도 두번 입금되지 않는다")
+    void recoverPreparedIntent() {
+        transferService.prepare(memberA(), memberC(), 2000); // 입금 전에 죽은 상황
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(memberC()).getMoney()).isEqualTo(10000);
+
+        assertThat(transferService.recover(Duration.ZERO)).isEqualTo(1);
+        assertThat(transferService.recover(Duration.ZERO)).isZero();
+
+        assertThat(memberRepository.findById(memberC()).getMoney()).isEqualTo(12000);
+        assertThat(intentStatus(memberRepository.shardOf(memberA()))).containsExactly(ShardedTransferService.DONE);
+    }
+
+    @Test
+    @DisplayName("입금은 했지만 DONE 을 남기기 전에 죽었다면 recover 는 다시 입금하지 않는다")
+    void recoverAfterApply() {
+        String transferId = transferService.prepare(memberA(), memberC(), 2000);
+        assertThat(transferService.apply(transferId, memberC(), 2000)).isTrue();
+
+        transferService.recover(Duration.ZERO);
+
+        assertThat(memberRepository.findById(memberA()).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(memberC()).getMoney()).isEqualTo(12000);
+    }
+
+    @AfterEach
+    void afterEach() {
+        for (MemberShard shard : memberRepository.getShards()) {
+            shard.getTemplate().update("delete from member");
+            shard.getTemplate().update("delete from transfer_intent");
+            shard.getTemplate().update("delete from transfer_applied");
+        }
+    }
+
+    private String memberA() {
+        return memberOnShard("memberA", 0);
+    }
+
+    private String memberB() {
+        return memberOnShard("memberB", 0);
+    }
+
+    private String memberC() {
+        return memberOnShard("memberC", 1);
+    }
+
+    // prefix 뒤에 숫자를 붙여서 shardIndex 번 샤드로 가는 ID 를 찾는다 (샤드 0 : memberA / memberB, 샤드 1 : memberC)
+    private String memberOnShard(String prefix, int shardIndex) {
+        for (int i = 0; ; i++) {
+            String memberId = prefix + i;
+            if (memberRepository.shardOf(memberId) == memberRepository.getShards().get(shardIndex)) {
+                return memberId;
+            }
+        }
+    }
+
+    private int countMembers(MemberShard shard, String memberId) {
+        Integer count = shard.getTemplate().queryForObject("select count(*) from member where member_id = ?", Integer.class, memberId);
+        return count == null ? 0 : count;
+    }
+
+    private int intentCount(MemberShard shard) {
+        return intentStatus(shard).size();
+    }
+
+    private List<String> intentStatus(MemberShard shard) {
+        return new JdbcTemplate(shard.getDataSource()).queryForList("select status from transfer_intent", String.class);
+    }
+}
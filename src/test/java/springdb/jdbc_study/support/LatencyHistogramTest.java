@@ -0,0 +1,46 @@
+package springdb.jdbc_study.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+public class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("percentile 은 3% 오차 안에서 실제 값과 같다")
+    void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+
+        assertThat(histogram.getCount()).isEqualTo(100_000);
+        assertThat((double) histogram.percentileNanos(50)).isCloseTo(50_000_000, within(50_000_000 * 0.03));
+        assertThat((double) histogram.percentileNanos(99)).isCloseTo(99_000_000, within(99_000_000 * 0.03));
+        assertThat(histogram.percentileNanos(100)).isEqualTo(100_000_000);
+        assertThat(histogram.getMaxNanos()).isEqualTo(100_000_000);
+    }
+
+    @Test
+    @DisplayName("칸 경계 - 작은 값은 그대로, 큰 값도 범위를 벗어나지 않는다")
+    void bucketBoundaries() {
+        for (long value : new long[]{0, 1, 31, 32, 33, 1_000_000, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertThat(LatencyHistogram.upperBoundOf(index)).isGreaterThanOrEqualTo(value);
+        }
+        assertThat(LatencyHistogram.upperBoundOf(LatencyHistogram.indexOf(31))).isEqualTo(31);
+    }
+
+    @Test
+    @DisplayName("reset 하면 비워진다")
+    void reset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1000);
+        histogram.reset();
+
+        assertThat(histogram.getCount()).isZero();
+        assertThat(histogram.percentileNanos(99)).isZero();
+    }
+}
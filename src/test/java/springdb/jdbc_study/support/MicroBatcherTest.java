@@ -0,0 +1,102 @@
+package springdb.jdbc_study.support;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MicroBatcherTest {
+
+    @Test
+    @DisplayName("maxDelay 안에 들어온 요청은 한 batch 로 처리된다")
+    void batches() {
+        List<Integer> batchSizes = new ArrayList<>();
+        MicroBatcher<CompletableFuture<Void>> batcher = new MicroBatcher<>("test", "test-batcher", 100, Duration.ofMillis(200),
+                batch -> {
+                    batchSizes.add(batch.size());
+                    batch.forEach(future -> future.complete(null));
+                }, CompletableFuture::completeExceptionally);
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            batcher.submit(future);
+            futures.add(future);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        batcher.close();
+
+        assertThat(batchSizes).containsExactly(10);
+    }
+
+    @Test
+    @DisplayName("처리 쓰레드가 인터럽트로 끝나면 큐에 남은 요청과 이후 submit 은 실패로 끝난다")
+    void interruptedWorker() throws Exception {
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MicroBatcher<CompletableFuture<Void>> batcher = new MicroBatcher<>("test", "test-batcher", 1, Duration.ZERO,
+                batch -> {
+                    handling.countDown();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    batch.forEach(future -> future.complete(null));
+                    Thread.currentThread().interrupt(); // 다음 poll 에서 InterruptedException
+                }, CompletableFuture::completeExceptionally);
+
+        CompletableFuture<Void> handled = new CompletableFuture<>();
+        batcher.submit(handled);
+        handling.await(5, TimeUnit.SECONDS);
+
+        CompletableFuture<Void> queued = new CompletableFuture<>();
+        batcher.submit(queued); // 처리 중에 큐에 들어간 요청
+        release.countDown();
+
+        handled.get(1, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> queued.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(InterruptedException.class);
+
+        CompletableFuture<Void> late = new CompletableFuture<>();
+        batcher.submit(late);
+        assertThat(late).isCompletedExceptionally();
+        batcher.close();
+    }
+
+    @Test
+    @DisplayName("close 와 겹친 submit 도 처리되거나 실패로 끝난다 - 끝나지 않고 남는 요청은 없다")
+    void submitRacingClose() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            MicroBatcher<CompletableFuture<Void>> batcher = new MicroBatcher<>("test", "test-batcher", 16, Duration.ZERO,
+                    batch -> batch.forEach(future -> future.complete(null)), CompletableFuture::completeExceptionally);
+
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            CountDownLatch started = new CountDownLatch(1);
+            Thread submitter = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 100; i++) {
+                    CompletableFuture<Void> future = new CompletableFuture<>();
+                    futures.add(future);
+                    batcher.submit(future);
+                }
+            });
+            submitter.start();
+            started.await();
+            batcher.close();
+            submitter.join();
+
+            for (CompletableFuture<Void> future : futures) {
+                future.exceptionally(e -> null).get(1, TimeUnit.SECONDS); // 성공이든 실패든 끝나 있어야 한다
+            }
+            assertThat(futures).hasSize(100);
+        }
+    }
+}